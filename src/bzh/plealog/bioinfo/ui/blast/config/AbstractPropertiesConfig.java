@@ -24,6 +24,8 @@ import java.util.Properties;
 
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.configuration.PropertiesConfiguration;
+import org.apache.commons.configuration.event.ConfigurationEvent;
+import org.apache.commons.configuration.event.ConfigurationListener;
 import org.apache.commons.configuration.reloading.FileChangedReloadingStrategy;
 
 import com.plealog.genericapp.api.log.EZLogger;
@@ -39,6 +41,7 @@ public class AbstractPropertiesConfig {
   private String                    _name = "config";
   protected String                  _path;
   protected PropertiesConfiguration _pConfig;
+  private volatile int              _revision;
 
   /**
    * Default constructor.
@@ -47,11 +50,46 @@ public class AbstractPropertiesConfig {
     try {
       _pConfig = new PropertiesConfiguration();
       _pConfig.setDelimiterParsingDisabled(true);
+      listenChanges();
     } catch (Exception e) {
       EZLogger.warn(e.toString());
     }
   }
 
+  /**
+   * Updates the revision of this configuration each time a property is
+   * modified, including when the configuration file is reloaded.
+   */
+  private void listenChanges() {
+    _pConfig.addConfigurationListener(new ConfigurationListener() {
+      public void configurationChanged(ConfigurationEvent event) {
+        if (!event.isBeforeUpdate()) {
+          setModified();
+        }
+      }
+    });
+  }
+
+  /**
+   * Returns the revision of this configuration. This value changes each time
+   * the configuration is modified, so it can be used by components caching
+   * data computed from this configuration.
+   * 
+   * @return a revision number
+   */
+  public int getRevision() {
+    return _revision;
+  }
+
+  /**
+   * Marks this configuration as modified. Subclasses that do not store
+   * their values as properties have to call this method when they are
+   * modified.
+   */
+  protected void setModified() {
+    _revision++;
+  }
+
   /**
    * Sets the name of this configuration.
    * 
@@ -103,6 +141,8 @@ public class AbstractPropertiesConfig {
     try {
       _pConfig = new PropertiesConfiguration(path);
       _path = path;
+      listenChanges();
+      setModified();
       cleanValues();
     } catch (Exception e) {
       // this has been done for backward compatibility when replacing
@@ -43,6 +43,7 @@ public class BlastEntry implements Serializable {
   private SROutput          _result;
   private DSequence         _query;
   private boolean           _view;
+  private transient BlastEntryStatistics _statistics;
 
   /**
    * Create a BlastEntry.
@@ -152,6 +153,22 @@ public class BlastEntry implements Serializable {
   public void setResult(SROutput output) {
     _result = output;
     _repr = null;
+    _statistics = null;
+  }
+
+  /**
+   * Return the hit and HSP counts of the Blast result. Return null if they
+   * have not been computed yet, see BlastEntryStatistics.compute().
+   */
+  public BlastEntryStatistics getStatistics() {
+    return _statistics;
+  }
+
+  /**
+   * Set the hit and HSP counts of the Blast result.
+   */
+  public void setStatistics(BlastEntryStatistics stats) {
+    _statistics = stats;
   }
 
   /**
@@ -0,0 +1,83 @@
+/* Copyright (C) 2003-2019 Patrick G. Durand
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *     https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ */
+package bzh.plealog.bioinfo.ui.blast.core;
+
+import bzh.plealog.bioinfo.api.data.searchresult.SRIteration;
+import bzh.plealog.bioinfo.api.data.searchresult.SROutput;
+
+/**
+ * This class contains the number of hits and HSPs of each iteration of a
+ * Blast result. It is computed once per BlastEntry, see
+ * BlastEntry.getStatistics().
+ *
+ * @author Patrick G. Durand
+ */
+public class BlastEntryStatistics {
+  private int[] _hits;
+  private int[] _hsps;
+
+  private BlastEntryStatistics(int size) {
+    _hits = new int[size];
+    _hsps = new int[size];
+  }
+
+  /**
+   * Computes the statistics of a Blast result. This method walks through all
+   * hits of the result, so it should not be called from the EDT with large
+   * results.
+   */
+  public static BlastEntryStatistics compute(SROutput bo) {
+    BlastEntryStatistics stats;
+    SRIteration bIter;
+    int i, j, size, nHits, nHsps;
+
+    size = bo.countIteration();
+    stats = new BlastEntryStatistics(size);
+    for (i = 0; i < size; i++) {
+      bIter = bo.getIteration(i);
+      nHits = bIter.countHit();
+      nHsps = 0;
+      for (j = 0; j < nHits; j++) {
+        nHsps += bIter.getHit(j).countHsp();
+      }
+      stats._hits[i] = nHits;
+      stats._hsps[i] = nHsps;
+    }
+    return stats;
+  }
+
+  /**
+   * Returns the number of iterations.
+   */
+  public int countIteration() {
+    return _hits.length;
+  }
+
+  /**
+   * Returns the number of hits of an iteration. Zero-based value.
+   */
+  public int getHitCount(int iterNum) {
+    return _hits[iterNum];
+  }
+
+  /**
+   * Returns the number of HSPs of an iteration. Zero-based value.
+   */
+  public int getHspCount(int iterNum) {
+    return _hsps[iterNum];
+  }
+}
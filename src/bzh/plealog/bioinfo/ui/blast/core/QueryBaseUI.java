@@ -32,6 +32,7 @@ public class QueryBaseUI extends QueryBase {
   
   private QueryBaseListener listener;
   private QueryBase _query;
+  private boolean _concurrentAccess;
   
   private QueryBaseUI() {
     super();
@@ -54,6 +55,25 @@ public class QueryBaseUI extends QueryBase {
     this.listener = queryBaseListener;
   }
 
+  /**
+   * Declares whether or not the embedded QueryBase can be accessed by several
+   * threads at the same time. QueryBase does not require implementations to be
+   * thread-safe, so default is false. Set it to true only when getSummary(),
+   * getStatus() and getResult() of the embedded QueryBase are safe to call
+   * concurrently: UI components then use parallel processing to load data.
+   */
+  public void setConcurrentAccessSupported(boolean concurrentAccess) {
+    _concurrentAccess = concurrentAccess;
+  }
+
+  /**
+   * Figures out whether or not the embedded QueryBase can be accessed by
+   * several threads at the same time. See setConcurrentAccessSupported().
+   */
+  public boolean isConcurrentAccessSupported() {
+    return _concurrentAccess;
+  }
+
   /**
    * Reset listener of this QueryBase.
    */
@@ -110,7 +130,7 @@ public class QueryBaseUI extends QueryBase {
 
   @Override
   public int getStatus() {
-    return 0;
+    return _query.getStatus();
   }
 
   @Override
@@ -60,13 +60,11 @@ import javax.swing.table.TableModel;
 import bzh.plealog.bioinfo.api.data.searchresult.SRHit;
 import bzh.plealog.bioinfo.api.data.searchresult.SRHsp;
 import bzh.plealog.bioinfo.api.data.searchresult.SROutput;
-import bzh.plealog.bioinfo.api.data.sequence.BankSequenceInfo;
 import bzh.plealog.bioinfo.api.data.sequence.DSeqUtils;
 import bzh.plealog.bioinfo.api.data.sequence.DSequence;
 import bzh.plealog.bioinfo.api.data.sequence.DSequenceInfo;
 import bzh.plealog.bioinfo.ui.blast.config.ConfigManager;
 import bzh.plealog.bioinfo.ui.blast.config.color.ColorPolicyConfig;
-import bzh.plealog.bioinfo.ui.blast.config.color.DefaultHitColorPolicy;
 import bzh.plealog.bioinfo.ui.blast.core.AnalysisUtils;
 import bzh.plealog.bioinfo.ui.blast.core.BlastHitHSP;
 import bzh.plealog.bioinfo.ui.blast.core.BlastHitHspImplem;
@@ -77,7 +75,6 @@ import bzh.plealog.bioinfo.ui.blast.event.BlastHitListSupport;
 import bzh.plealog.bioinfo.ui.blast.event.BlastIterationListEvent;
 import bzh.plealog.bioinfo.ui.blast.event.BlastIterationListListener;
 import bzh.plealog.bioinfo.ui.resources.SVMessages;
-import bzh.plealog.bioinfo.ui.seqinfo.SequenceInfoViewer;
 import bzh.plealog.bioinfo.ui.util.JKTable;
 import bzh.plealog.bioinfo.ui.util.TableColumnManager;
 import bzh.plealog.bioinfo.ui.util.TableHeaderColumnItem;
@@ -112,7 +109,6 @@ public class BlastHitTable extends JPanel implements BlastHitListListener,
   private String                    _tableID                 = "";
   private int                       _colIdForSorting         = HIT_NUM;
   private boolean                   _ascentSortOrder         = true;
-  private BlastHitHspSortComparator _blastHitHspSortComparator;
 
   private static final String       DEF_COL_PROP_KEY         = "hitList.columns";
   public static final String        DEF_COL_ITEM_HEADERS_INT = "0,1,2,6,7,8,18,19,22,24";
@@ -177,9 +173,6 @@ public class BlastHitTable extends JPanel implements BlastHitListListener,
     createReferenceTableColumnModel();
     createDefaultTableColumnModel();
 
-    _blastHitHspSortComparator = new BlastHitHspSortComparator();
-    _blastHitHspSortComparator.setAscent(_ascentSortOrder);
-    _blastHitHspSortComparator.setColID(_colIdForSorting);
     _hspSummaryRenderer = new HSPSummaryCellRenderer();
     _qualityCellRenderer = new HitQualityCellRenderer();
     _pctRenderer = new PercentRenderer();
@@ -373,15 +366,7 @@ public class BlastHitTable extends JPanel implements BlastHitListListener,
    * Convert a hit ordering number to a table row.
    */
   private int getRowIndex(int hitNum) {
-    int idx, i, size;
-
-    size = _blastList.getModel().getRowCount();
-    for (i = 0; i < size; i++) {
-      idx = (Integer) _blastList.getValueAt(i, 0);
-      if (idx == hitNum)
-        return i;
-    }
-    return -1;
+    return ((BlastHitTableModel) _blastList.getModel()).getTableRowOfHit(hitNum);
   }
 
   /**
@@ -439,7 +424,7 @@ public class BlastHitTable extends JPanel implements BlastHitListListener,
       _blastList.getSelectionModel().clearSelection();
       for (BlastHitHSP h : hits) {
         rowIdx = getRowIndex(h.getHit().getHitNum());
-        if (rowIdx < _blastList.getModel().getRowCount()) {
+        if (rowIdx >= 0 && rowIdx < _blastList.getModel().getRowCount()) {
           if (bFirst) {
             firstRow = rowIdx;
             bFirst = false;
@@ -463,6 +448,7 @@ public class BlastHitTable extends JPanel implements BlastHitListListener,
     BlastHitTableModel tModel = (BlastHitTableModel) _blastList.getModel();
 
     tModel.resetModel();
+    _hspSummaryRenderer.clearCache();
     // this line will notifies SeqAlign Viewer to reset its view
     // (remember that SeqAlignViewer listens to this selection model
     // to figure out which BHit's seqAlign to display)
@@ -478,6 +464,7 @@ public class BlastHitTable extends JPanel implements BlastHitListListener,
   public void setDataModel(BlastHitHSP[] bhh) {
     _blastList.getSelectionModel().setSelectionInterval(0, 0);
     BlastHitTableModel tModel = (BlastHitTableModel) _blastList.getModel();
+    _hspSummaryRenderer.clearCache();
     tModel.updateModel(bhh);
     activateActions(true);
     int[] colWidth = _blastList.getCurrentColumnSize();
@@ -563,23 +550,6 @@ public class BlastHitTable extends JPanel implements BlastHitListListener,
       super(dm);
     }
 
-    /**
-     * Given a bit score, returned the appropriate color from the COnfigManager.
-     */
-    private Color getColor(SRHsp hsp) {
-      Color clr = Color.BLACK;
-      ColorPolicyConfig nc;
-
-      nc = (ColorPolicyConfig) ConfigManager.getConfig(ColorPolicyConfig.NAME);
-      if (nc == null) {
-        clr = DefaultHitColorPolicy.getColor((int) hsp.getScores()
-            .getBitScore());
-      } else {
-        clr = nc.getHitColor(hsp, false);
-      }
-      return clr;
-    }
-
     /**
      * This table cell renderer.
      */
@@ -601,7 +571,10 @@ public class BlastHitTable extends JPanel implements BlastHitListListener,
       if (tcr instanceof JLabel) {
         JLabel lbl;
         lbl = (JLabel) tcr;
-        Object obj;
+        BlastHitTableModel model;
+        BlastHitTableSnapshot snapshot;
+        int sRow;
+        byte featStatus;
 
         // adjust alignment
         switch (id) {
@@ -617,14 +590,15 @@ public class BlastHitTable extends JPanel implements BlastHitListListener,
         }
 
         lbl.setOpaque(true);
-        // adjust colors
-        obj = getModel().getValueAt(row, -1);
-        if (obj != null && obj instanceof BlastHitHspImplem) {
-          BlastHitHspImplem bhh = (BlastHitHspImplem) obj;
-          SRHsp hsp = (bhh.getHit()).getHsp(bhh.getHspNum() - 1);
-          lbl.setForeground(getColor(hsp));
-          if (column == 1 && AnalysisUtils.hasFeatures(bhh.getHit())) {
-            if (AnalysisUtils.hasWarnFeatures(bhh.getHit()))
+        // adjust colors: precomputed by the snapshot
+        model = (BlastHitTableModel) getModel();
+        snapshot = model.getSnapshot();
+        if (snapshot != null && row < snapshot.size()) {
+          sRow = model.getSnapshotRow(row);
+          lbl.setForeground(snapshot.getColor(sRow));
+          featStatus = snapshot.getFeatureStatus(sRow);
+          if (column == 1 && featStatus != BlastHitTableSnapshot.NO_FEATURE) {
+            if (featStatus == BlastHitTableSnapshot.WARN_FEATURE)
               lbl.setIcon(EZEnvironment.getImageIcon("featWarn.png"));
             else
               lbl.setIcon(EZEnvironment.getImageIcon("feature.png"));
@@ -713,18 +687,18 @@ public class BlastHitTable extends JPanel implements BlastHitListListener,
     }
 
     public int[] getSelectedHitIds() {
-      BlastHitHSP bhh;
+      BlastHitTableModel model;
       int[] ids, sels;
       int i, size;
 
       size = this.getSelectedRowCount();
       if (size == 0)
         return null;
+      model = (BlastHitTableModel) this.getModel();
       sels = this.getSelectedRows();
       ids = new int[size];
       for (i = 0; i < size; i++) {
-        bhh = (BlastHitHSP) this.getValueAt(sels[i], -1);
-        ids[i] = bhh.getHit().getHitNum();
+        ids[i] = model.getHitNumOfTableRow(sels[i]);
       }
       // table column may be sorted in various. We need to have Hit IDs by
       // ascending
@@ -805,27 +779,37 @@ public class BlastHitTable extends JPanel implements BlastHitListListener,
    * The hit table model.
    */
   private class BlastHitTableModel extends AbstractTableModel {
-    private static final long serialVersionUID = -8111948924562038269L;
-    private BlastHitHSP[]     _hits;
+    private static final long     serialVersionUID = -8111948924562038269L;
+    private BlastHitTableSnapshot _snapshot;
+    private BlastHitTableSorter   _sorter;
+    // table row to snapshot row
+    private int[]                 _rows;
+    // snapshot row to table row
+    private int[]                 _tableRows;
+    // used to discard obsolete background sorts
+    private int                   _sortGeneration;
 
     private BlastHitTableModel() {
     }
 
-    private BlastHitTableModel(BlastHitHSP[] bhh) {
-      setColHeaders(null);
-      _hits = bhh;
-      sortData();
-    }
-
     public void resetModel() {
-      _hits = null;
+      _snapshot = null;
+      _sorter = null;
+      _rows = null;
+      _tableRows = null;
+      _sortGeneration++;
       fireTableChanged(new TableModelEvent(this, 0, 0, 0,
           TableModelEvent.DELETE));
     }
 
     public void updateModel(BlastHitHSP[] bhh) {
-      _hits = bhh;
-      sortData();
+      _snapshot = BlastHitTableSnapshot.create(bhh);
+      _sorter = new BlastHitTableSorter(_snapshot);
+      _sortGeneration++;
+      // new data: sort is done right now since rows must be available for
+      // display. It only involves primitive keys.
+      _rows = _sorter.getRows(_colIdForSorting, _ascentSortOrder);
+      _tableRows = invert(_rows);
       fireTableChanged(new TableModelEvent(this, 0, 0, 0,
           TableModelEvent.UPDATE));
     }
@@ -843,168 +827,29 @@ public class BlastHitTable extends JPanel implements BlastHitListListener,
     }
 
     public int getRowCount() {
-      if (_hits == null)
+      if (_snapshot == null)
         return 0;
-      return _hits.length;
+      return _snapshot.size();
     }
 
-    private Object getValue(BlastHitHSP bhh, int col) {
-      BankSequenceInfo si;
-      Object val = EMPTY_STR;
-      double eval;
-      String str;
-      int id, idx;
-      SRHit hit = bhh.getHit();
-      SRHsp hsp = hit.getHsp(0);
-
-      id = _colItems[col].getIID();
-      switch (id) {
-        case HIT_NUM:
-          val = new Integer(hit.getHitNum());
-          break;
-        case ACCESS:
-          val = hit.getHitAccession();
-          break;
-        case DEFINITION:
-          val = hit.getHitDef();
-          // code added because of KDMS : when classification IDs are available,
-          // there
-          // are added in the Fasta header file between tags [[ and ]]. Here, we
-          // cut off
-          // this data for display purpose. This code is not optimal... todo:
-          // optimize it!
-          if (val != null) {
-            str = val.toString();
-            idx = str.indexOf("[[");
-            if (idx != -1)
-              val = str.subSequence(0, idx);
-          }
+    /**
+     * Returns the snapshot row displayed on a table row.
+     */
+    public int getSnapshotRow(int row) {
+      return _rows[row];
+    }
 
-          break;
-        case HSP_SUMMARY:
-          val = hit;
-          break;
-        case LENGTH:
-          val = new Integer(hit.getHitLen());
-          break;
-        case SCORE_BITS:
-          val = AnalysisUtils.SCORE_FORMATTER.format(hsp.getScores()
-              .getBitScore());
-          break;
-        case EVALUE:
-          // _logger.info(hsp.getScores().getEvalue());
-        case SCORE:
-          eval = (id == EVALUE ? hsp.getScores().getEvalue() : hsp.getScores()
-              .getScore());
-          if (eval > 0 && eval < 0.1)
-            val = AnalysisUtils.EVALUE_FORMATTER1.format(eval);
-          else
-            val = AnalysisUtils.EVALUE_FORMATTER2.format(eval);
-          break;
-        case NBHSPS:
-          val = new Integer(hit.countHsp());
-          break;
-        case Q_FROM:
-          val = new Integer(hsp.getQuery().getFrom());
-          break;
-        case Q_TO:
-          val = new Integer(hsp.getQuery().getTo());
-          break;
-        case Q_GAPS:
-          val = new Integer(hsp.getQuery().getGaps());
-          break;
-        case H_FROM:
-          val = new Integer(hsp.getHit().getFrom());
-          break;
-        case H_TO:
-          val = new Integer(hsp.getHit().getTo());
-          break;
-        case H_GAP:
-          val = new Integer(hsp.getHit().getGaps());
-          break;
-        case Q_FRAME:
-          val = new Integer(hsp.getQuery().getFrame());
-          break;
-        case H_FRAME:
-          val = new Integer(hsp.getHit().getFrame());
-          break;
-        case IDENTITY:
-          val = AnalysisUtils.PCT_FORMATTER.format(hsp.getScores()
-              .getIdentityP()) + "%";
-          break;
-        case POSITIVE:
-          val = AnalysisUtils.PCT_FORMATTER.format(hsp.getScores()
-              .getPositiveP()) + "%";
-          break;
-        case GAPS:
-          val = AnalysisUtils.PCT_FORMATTER.format(hsp.getScores().getGapsP())
-              + "%";
-          break;
-        case T_GAPS:
-          val = new Integer(hsp.getScores().getGaps());
-          break;
-        case MISMATCHES:
-          val = new Integer(hsp.getScores().getMismatches());
-          break;
-        case ALI_LEN:
-          val = new Integer(hsp.getScores().getAlignLen());
-          break;
-        case QUALITY:
-          val = hit;
-          break;
-        case Q_COVERAGE:
-          val = AnalysisUtils.PCT_FORMATTER
-              .format(hit.getQueryGlobalCoverage()) + "%";
-          break;
-        case H_COVERAGE:
-          val = AnalysisUtils.PCT_FORMATTER.format(hit.getHitGlobalCoverage())
-              + "%";
-          break;
-        case ORGANISM:
-          si = hit.getSequenceInfo();
-          if (si != null && si.getOrganism() != null)
-            val = si.getOrganism();
-          else
-            val = "?";
-          break;
-        case DIVISION:
-          si = hit.getSequenceInfo();
-          if (si != null && si.getDivision() != null)
-            val = si.getDivision();
-          else
-            val = "?";
-          break;
-        case TAXONOMY:
-          si = hit.getSequenceInfo();
-          if (si != null && si.getTaxonomy() != null)
-            val = si.getTaxonomy();
-          else
-            val = "?";
-          break;
-        case C_DATE:
-          si = hit.getSequenceInfo();
-          if (si != null && si.getCreationDate() != 0)
-            val = SequenceInfoViewer.prepareDate(String.valueOf(si
-                .getCreationDate()));
-          else
-            val = "?";
-          break;
-        case U_DATE:
-          si = hit.getSequenceInfo();
-          if (si != null && si.getUpdateDate() != 0)
-            val = SequenceInfoViewer.prepareDate(String.valueOf(si
-                .getUpdateDate()));
-          else
-            val = "?";
-          break;
-      }
-      return val;
+    /**
+     * Returns the data currently displayed. Can be null.
+     */
+    public BlastHitTableSnapshot getSnapshot() {
+      return _snapshot;
     }
 
     public Object getValueAt(int row, int col) {
       Object obj = null;
 
-      if (_hits == null)
+      if (_snapshot == null)
         return (EMPTY_STR);
 
       if (row == -1)
@@ -1012,20 +857,97 @@ public class BlastHitTable extends JPanel implements BlastHitListListener,
 
       if (col < 0)// this is used by the SeqAlignViewer Component to get full
                   // Hit data
-        obj = _hits[row];
+        obj = _snapshot.getHit(_rows[row]);
       else
-        obj = getValue(_hits[row], col);
+        obj = _snapshot.getValue(_rows[row], _colItems[col].getIID());
 
       return obj == null ? EMPTY_STR : obj;
     }
 
+    /**
+     * Sorts the data using current sort column and direction. When not already
+     * available, the sorted list of rows is computed in a background thread.
+     */
     public void sortData() {
-      if (_hits == null || _hits.length == 0)
+      int[] rows;
+
+      if (_sorter == null)
         return;
-      BlastHitHspImplem[] hitsCopy = new BlastHitHspImplem[_hits.length];
-      System.arraycopy(_hits, 0, hitsCopy, 0, _hits.length);
-      Arrays.sort(hitsCopy, _blastHitHspSortComparator);
-      _hits = hitsCopy;
+      _sortGeneration++;
+      rows = _sorter.getCachedRows(_colIdForSorting, _ascentSortOrder);
+      if (rows != null) {
+        setRows(rows);
+        return;
+      }
+      EZEnvironment.setWaitCursor();
+      new SortDataThread(_sorter, _colIdForSorting, _ascentSortOrder,
+          _sortGeneration).start();
+    }
+
+    private void setRows(int[] rows) {
+      _rows = rows;
+      _tableRows = invert(rows);
+      _blastList.repaint();
+    }
+
+    private int[] invert(int[] rows) {
+      int[] inverse;
+      int i;
+
+      inverse = new int[rows.length];
+      for (i = 0; i < rows.length; i++) {
+        inverse[rows[i]] = i;
+      }
+      return inverse;
+    }
+
+    /**
+     * Returns the table row displaying a hit or -1 if not found.
+     *
+     * @param hitNum hit number
+     */
+    public int getTableRowOfHit(int hitNum) {
+      int row;
+
+      if (_snapshot == null)
+        return -1;
+      row = _snapshot.getRowOfHit(hitNum);
+      return row == -1 ? -1 : _tableRows[row];
+    }
+
+    /**
+     * Returns the hit number displayed on a table row.
+     */
+    public int getHitNumOfTableRow(int row) {
+      return _snapshot.getHitNum(_rows[row]);
+    }
+
+    private class SortDataThread extends Thread {
+      private BlastHitTableSorter sorter;
+      private int                 colID;
+      private boolean             ascending;
+      private int                 generation;
+
+      public SortDataThread(BlastHitTableSorter sorter, int colID,
+          boolean ascending, int generation) {
+        this.sorter = sorter;
+        this.colID = colID;
+        this.ascending = ascending;
+        this.generation = generation;
+      }
+
+      public void run() {
+        final int[] rows = sorter.getRows(colID, ascending);
+        SwingUtilities.invokeLater(new Runnable() {
+          public void run() {
+            // data or sort column may have changed in the meantime
+            if (generation == _sortGeneration) {
+              setRows(rows);
+            }
+            EZEnvironment.setDefaultCursor();
+          }
+        });
+      }
     }
   }
 
@@ -1126,10 +1048,7 @@ public class BlastHitTable extends JPanel implements BlastHitListListener,
       }
       header.repaint();
       _blastList.clearSelection();
-      _blastHitHspSortComparator.setAscent(_ascentSortOrder);
-      _blastHitHspSortComparator.setColID(_colIdForSorting);
       ((BlastHitTableModel) table.getModel()).sortData();
-      _blastList.repaint();
     }
   }
 
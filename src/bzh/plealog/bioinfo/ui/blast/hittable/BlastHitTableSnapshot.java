@@ -0,0 +1,352 @@
+/* Copyright (C) 2003-2019 Patrick G. Durand
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *     https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ */
+package bzh.plealog.bioinfo.ui.blast.hittable;
+
+import java.awt.Color;
+import java.util.Arrays;
+
+import bzh.plealog.bioinfo.api.data.searchresult.SRHit;
+import bzh.plealog.bioinfo.api.data.searchresult.SRHsp;
+import bzh.plealog.bioinfo.api.data.searchresult.SRHspScore;
+import bzh.plealog.bioinfo.api.data.sequence.BankSequenceInfo;
+import bzh.plealog.bioinfo.ui.blast.config.ConfigManager;
+import bzh.plealog.bioinfo.ui.blast.config.color.ColorPolicyConfig;
+import bzh.plealog.bioinfo.ui.blast.config.color.DefaultHitColorPolicy;
+import bzh.plealog.bioinfo.ui.blast.core.AnalysisUtils;
+import bzh.plealog.bioinfo.ui.blast.core.BlastHitHSP;
+import bzh.plealog.bioinfo.ui.seqinfo.SequenceInfoViewer;
+
+/**
+ * This is an immutable view of the data displayed by a BlastHitTable for a
+ * single iteration. All cell values are computed once when the snapshot is
+ * created: numerical data are stored in primitive arrays, text data are stored
+ * already formatted, and rendering attributes (hit color, feature icon) are
+ * precomputed. So, painting the table only requires array lookups.
+ * <br><br>
+ * Rows are stored in the order of the BlastHitHSP array used to create the
+ * snapshot. Columns are identified using BlastHitTable column IDs.
+ *
+ * @author Patrick G. Durand
+ */
+public class BlastHitTableSnapshot {
+  private BlastHitHSP[] _hits;
+  // per column ID; null when a column does not have such a data type
+  private int[][]       _ints;
+  private double[][]    _doubles;
+  private String[][]    _texts;
+  // per row rendering attributes
+  private Color[]       _colors;
+  private byte[]        _features;
+  // hit number to row: _hitNumIndex[hitNum - _minHitNum]
+  private int[]         _hitNumIndex;
+  private int           _minHitNum;
+
+  /** number of column IDs defined in BlastHitTable */
+  public static final int  NB_COLUMNS    = BlastHitTable.T_GAPS + 1;
+
+  public static final byte NO_FEATURE    = 0;
+  public static final byte FEATURE       = 1;
+  public static final byte WARN_FEATURE  = 2;
+
+  private static final String UNKNOWN_STR = "?";
+
+  private static final int[] INT_COLUMNS = { BlastHitTable.HIT_NUM,
+      BlastHitTable.LENGTH, BlastHitTable.NBHSPS, BlastHitTable.Q_FROM,
+      BlastHitTable.Q_TO, BlastHitTable.Q_GAPS, BlastHitTable.H_FROM,
+      BlastHitTable.H_TO, BlastHitTable.H_GAP, BlastHitTable.Q_FRAME,
+      BlastHitTable.H_FRAME, BlastHitTable.T_GAPS, BlastHitTable.MISMATCHES,
+      BlastHitTable.ALI_LEN, BlastHitTable.C_DATE, BlastHitTable.U_DATE,
+      BlastHitTable.QUALITY };
+
+  private static final int[] DOUBLE_COLUMNS = { BlastHitTable.SCORE_BITS,
+      BlastHitTable.EVALUE, BlastHitTable.SCORE, BlastHitTable.IDENTITY,
+      BlastHitTable.POSITIVE, BlastHitTable.GAPS, BlastHitTable.Q_COVERAGE,
+      BlastHitTable.H_COVERAGE };
+
+  // double columns are formatted for display; dates are int data formatted
+  // for display
+  private static final int[] TEXT_COLUMNS = { BlastHitTable.ACCESS,
+      BlastHitTable.DEFINITION, BlastHitTable.ORGANISM, BlastHitTable.DIVISION,
+      BlastHitTable.TAXONOMY, BlastHitTable.C_DATE, BlastHitTable.U_DATE,
+      BlastHitTable.SCORE_BITS, BlastHitTable.EVALUE, BlastHitTable.SCORE,
+      BlastHitTable.IDENTITY, BlastHitTable.POSITIVE, BlastHitTable.GAPS,
+      BlastHitTable.Q_COVERAGE, BlastHitTable.H_COVERAGE };
+
+  private BlastHitTableSnapshot(int size) {
+    _hits = new BlastHitHSP[size];
+    _ints = new int[NB_COLUMNS][];
+    _doubles = new double[NB_COLUMNS][];
+    _texts = new String[NB_COLUMNS][];
+    for (int id : INT_COLUMNS) {
+      _ints[id] = new int[size];
+    }
+    for (int id : DOUBLE_COLUMNS) {
+      _doubles[id] = new double[size];
+    }
+    for (int id : TEXT_COLUMNS) {
+      _texts[id] = new String[size];
+    }
+    _colors = new Color[size];
+    _features = new byte[size];
+  }
+
+  /**
+   * Creates a snapshot.
+   *
+   * @param bhh the data to display. Can be null.
+   */
+  public static BlastHitTableSnapshot create(BlastHitHSP[] bhh) {
+    BlastHitTableSnapshot snapshot;
+    ColorPolicyConfig nc;
+    int i, size;
+
+    size = (bhh != null ? bhh.length : 0);
+    snapshot = new BlastHitTableSnapshot(size);
+    // color policy is retrieved once, not once per cell
+    nc = (ColorPolicyConfig) ConfigManager.getConfig(ColorPolicyConfig.NAME);
+    for (i = 0; i < size; i++) {
+      snapshot.setRow(i, bhh[i], nc);
+    }
+    snapshot.indexHitNumbers();
+    return snapshot;
+  }
+
+  private static String formatPct(double value) {
+    return AnalysisUtils.PCT_FORMATTER.format(value) + "%";
+  }
+
+  private static String formatEValue(double value) {
+    if (value > 0 && value < 0.1)
+      return AnalysisUtils.EVALUE_FORMATTER1.format(value);
+    else
+      return AnalysisUtils.EVALUE_FORMATTER2.format(value);
+  }
+
+  private static String formatDate(int date) {
+    if (date != 0)
+      return SequenceInfoViewer.prepareDate(String.valueOf(date));
+    else
+      return UNKNOWN_STR;
+  }
+
+  private static String getInfo(String str) {
+    return str != null ? str : UNKNOWN_STR;
+  }
+
+  private void setRow(int row, BlastHitHSP bhh, ColorPolicyConfig nc) {
+    BankSequenceInfo si;
+    SRHspScore scores;
+    SRHit hit;
+    SRHsp hsp, curHsp;
+    String str;
+    int idx;
+
+    _hits[row] = bhh;
+    hit = bhh.getHit();
+    hsp = hit.getHsp(0);
+    scores = hsp.getScores();
+    si = hit.getSequenceInfo();
+
+    _ints[BlastHitTable.HIT_NUM][row] = hit.getHitNum();
+    _ints[BlastHitTable.LENGTH][row] = hit.getHitLen();
+    _ints[BlastHitTable.NBHSPS][row] = hit.countHsp();
+    _ints[BlastHitTable.Q_FROM][row] = hsp.getQuery().getFrom();
+    _ints[BlastHitTable.Q_TO][row] = hsp.getQuery().getTo();
+    _ints[BlastHitTable.Q_GAPS][row] = hsp.getQuery().getGaps();
+    _ints[BlastHitTable.H_FROM][row] = hsp.getHit().getFrom();
+    _ints[BlastHitTable.H_TO][row] = hsp.getHit().getTo();
+    _ints[BlastHitTable.H_GAP][row] = hsp.getHit().getGaps();
+    _ints[BlastHitTable.Q_FRAME][row] = hsp.getQuery().getFrame();
+    _ints[BlastHitTable.H_FRAME][row] = hsp.getHit().getFrame();
+    _ints[BlastHitTable.T_GAPS][row] = scores.getGaps();
+    _ints[BlastHitTable.MISMATCHES][row] = scores.getMismatches();
+    _ints[BlastHitTable.ALI_LEN][row] = scores.getAlignLen();
+    _ints[BlastHitTable.C_DATE][row] = (si != null ? si.getCreationDate() : 0);
+    _ints[BlastHitTable.U_DATE][row] = (si != null ? si.getUpdateDate() : 0);
+    _ints[BlastHitTable.QUALITY][row] = (nc != null ? nc.getQualityValue(hsp) : 0);
+
+    _doubles[BlastHitTable.SCORE_BITS][row] = scores.getBitScore();
+    _doubles[BlastHitTable.EVALUE][row] = scores.getEvalue();
+    _doubles[BlastHitTable.SCORE][row] = scores.getScore();
+    _doubles[BlastHitTable.IDENTITY][row] = scores.getIdentityP();
+    _doubles[BlastHitTable.POSITIVE][row] = scores.getPositiveP();
+    _doubles[BlastHitTable.GAPS][row] = scores.getGapsP();
+    _doubles[BlastHitTable.Q_COVERAGE][row] = hit.getQueryGlobalCoverage();
+    _doubles[BlastHitTable.H_COVERAGE][row] = hit.getHitGlobalCoverage();
+
+    _texts[BlastHitTable.ACCESS][row] = hit.getHitAccession();
+    str = hit.getHitDef();
+    // when classification IDs are available, they are added in the Fasta
+    // header between tags [[ and ]]: cut off this data for display purpose
+    if (str != null) {
+      idx = str.indexOf("[[");
+      if (idx != -1)
+        str = str.substring(0, idx);
+    }
+    _texts[BlastHitTable.DEFINITION][row] = str;
+    _texts[BlastHitTable.ORGANISM][row] = getInfo(si != null ? si.getOrganism() : null);
+    _texts[BlastHitTable.DIVISION][row] = getInfo(si != null ? si.getDivision() : null);
+    _texts[BlastHitTable.TAXONOMY][row] = getInfo(si != null ? si.getTaxonomy() : null);
+    _texts[BlastHitTable.C_DATE][row] = formatDate(_ints[BlastHitTable.C_DATE][row]);
+    _texts[BlastHitTable.U_DATE][row] = formatDate(_ints[BlastHitTable.U_DATE][row]);
+    _texts[BlastHitTable.SCORE_BITS][row] = AnalysisUtils.SCORE_FORMATTER.format(scores.getBitScore());
+    _texts[BlastHitTable.EVALUE][row] = formatEValue(scores.getEvalue());
+    _texts[BlastHitTable.SCORE][row] = formatEValue(scores.getScore());
+    _texts[BlastHitTable.IDENTITY][row] = formatPct(scores.getIdentityP());
+    _texts[BlastHitTable.POSITIVE][row] = formatPct(scores.getPositiveP());
+    _texts[BlastHitTable.GAPS][row] = formatPct(scores.getGapsP());
+    _texts[BlastHitTable.Q_COVERAGE][row] = formatPct(hit.getQueryGlobalCoverage());
+    _texts[BlastHitTable.H_COVERAGE][row] = formatPct(hit.getHitGlobalCoverage());
+
+    // rendering attributes
+    curHsp = hit.getHsp(bhh.getHspNum() - 1);
+    if (nc == null) {
+      _colors[row] = DefaultHitColorPolicy.getColor((int) curHsp.getScores().getBitScore());
+    } else {
+      _colors[row] = nc.getHitColor(curHsp, false);
+    }
+    if (AnalysisUtils.hasFeatures(hit)) {
+      _features[row] = AnalysisUtils.hasWarnFeatures(hit) ? WARN_FEATURE : FEATURE;
+    } else {
+      _features[row] = NO_FEATURE;
+    }
+  }
+
+  /**
+   * Creates the hit number to row index. Hit numbers are usually in the range
+   * [1..size], so a plain array is used.
+   */
+  private void indexHitNumbers() {
+    int[] hitNums;
+    int i, min, max;
+
+    hitNums = _ints[BlastHitTable.HIT_NUM];
+    if (hitNums.length == 0) {
+      _hitNumIndex = new int[0];
+      return;
+    }
+    min = Integer.MAX_VALUE;
+    max = Integer.MIN_VALUE;
+    for (i = 0; i < hitNums.length; i++) {
+      min = Math.min(min, hitNums[i]);
+      max = Math.max(max, hitNums[i]);
+    }
+    _minHitNum = min;
+    _hitNumIndex = new int[max - min + 1];
+    Arrays.fill(_hitNumIndex, -1);
+    for (i = 0; i < hitNums.length; i++) {
+      // several rows may share a hit: keep the first one
+      if (_hitNumIndex[hitNums[i] - min] == -1)
+        _hitNumIndex[hitNums[i] - min] = i;
+    }
+  }
+
+  /**
+   * Returns the row displaying a hit or -1 if not found.
+   *
+   * @param hitNum hit number
+   */
+  public int getRowOfHit(int hitNum) {
+    int idx = hitNum - _minHitNum;
+    if (idx < 0 || idx >= _hitNumIndex.length)
+      return -1;
+    return _hitNumIndex[idx];
+  }
+
+  /**
+   * Returns the hit number displayed on a row.
+   */
+  public int getHitNum(int row) {
+    return _ints[BlastHitTable.HIT_NUM][row];
+  }
+
+  /**
+   * Returns the number of rows.
+   */
+  public int size() {
+    return _hits.length;
+  }
+
+  /**
+   * Returns the data displayed on a row.
+   */
+  public BlastHitHSP getHit(int row) {
+    return _hits[row];
+  }
+
+  /**
+   * Returns the value to display in a cell.
+   *
+   * @param row row index within this snapshot
+   * @param colID one of BlastHitTable column IDs
+   */
+  public Object getValue(int row, int colID) {
+    if (colID == BlastHitTable.HSP_SUMMARY || colID == BlastHitTable.QUALITY) {
+      return _hits[row].getHit();
+    } else if (_texts[colID] != null) {
+      return _texts[colID][row];
+    } else if (_ints[colID] != null) {
+      return Integer.valueOf(_ints[colID][row]);
+    }
+    return null;
+  }
+
+  /**
+   * Returns the int values of a column or null if column does not contain
+   * such data.
+   *
+   * @param colID one of BlastHitTable column IDs
+   */
+  public int[] getIntColumn(int colID) {
+    return _ints[colID];
+  }
+
+  /**
+   * Returns the double values of a column or null if column does not contain
+   * such data.
+   *
+   * @param colID one of BlastHitTable column IDs
+   */
+  public double[] getDoubleColumn(int colID) {
+    return _doubles[colID];
+  }
+
+  /**
+   * Returns the text values of a column or null if column does not contain
+   * such data.
+   *
+   * @param colID one of BlastHitTable column IDs
+   */
+  public String[] getTextColumn(int colID) {
+    return _texts[colID];
+  }
+
+  /**
+   * Returns the color to use to display a row.
+   */
+  public Color getColor(int row) {
+    return _colors[row];
+  }
+
+  /**
+   * Returns the feature status of a row. One of NO_FEATURE, FEATURE or
+   * WARN_FEATURE.
+   */
+  public byte getFeatureStatus(int row) {
+    return _features[row];
+  }
+}
@@ -0,0 +1,134 @@
+/* Copyright (C) 2003-2019 Patrick G. Durand
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *     https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ */
+package bzh.plealog.bioinfo.ui.blast.hittable;
+
+import bzh.plealog.bioinfo.ui.blast.resulttable.sort.ColumnKeys;
+
+/**
+ * This class sorts the rows of a BlastHitTableSnapshot. Sorting relies on
+ * primitive keys extracted once per column from the snapshot; resulting
+ * permutations are computed on demand and cached for each column and sort
+ * direction. Methods of this class can be called from any thread.
+ *
+ * @author Patrick G. Durand
+ */
+public class BlastHitTableSorter {
+  private BlastHitTableSnapshot _snapshot;
+  // per column ID
+  private int[][]               _keys;
+  // per column ID and direction, see getCacheIndex()
+  private int[][]               _permutations;
+
+  /**
+   * Constructor.
+   *
+   * @param snapshot the data to sort
+   */
+  public BlastHitTableSorter(BlastHitTableSnapshot snapshot) {
+    _snapshot = snapshot;
+    _keys = new int[BlastHitTableSnapshot.NB_COLUMNS][];
+    _permutations = new int[2 * BlastHitTableSnapshot.NB_COLUMNS][];
+  }
+
+  private int getCacheIndex(int colID, boolean ascending) {
+    return 2 * colID + (ascending ? 0 : 1);
+  }
+
+  /**
+   * Returns a sorted list of snapshot rows if it has already been computed.
+   * Otherwise returns null.
+   *
+   * @param colID one of BlastHitTable column IDs
+   * @param ascending sort direction
+   */
+  public synchronized int[] getCachedRows(int colID, boolean ascending) {
+    return _permutations[getCacheIndex(colID, ascending)];
+  }
+
+  /**
+   * Returns a sorted list of snapshot rows. Rows having the same value stay in
+   * their natural order, whatever the sort direction.
+   *
+   * @param colID one of BlastHitTable column IDs
+   * @param ascending sort direction
+   */
+  public int[] getRows(int colID, boolean ascending) {
+    int[] keys, rows, sorted;
+    int i, size;
+
+    rows = getCachedRows(colID, ascending);
+    if (rows != null) {
+      return rows;
+    }
+    keys = getKeys(colID);
+    if (ascending) {
+      rows = ColumnKeys.sortIndex(keys);
+    } else {
+      sorted = ColumnKeys.sortIndex(keys, true);
+      size = sorted.length;
+      rows = new int[size];
+      for (i = 0; i < size; i++) {
+        rows[i] = sorted[size - 1 - i];
+      }
+    }
+    synchronized (this) {
+      _permutations[getCacheIndex(colID, ascending)] = rows;
+    }
+    return rows;
+  }
+
+  /**
+   * Returns the sort keys of a column.
+   */
+  private int[] getKeys(int colID) {
+    ColumnKeys cKeys;
+    double[] dValues;
+    String[] sValues;
+    int[] keys;
+    int i, size;
+
+    synchronized (this) {
+      keys = _keys[colID];
+    }
+    if (keys != null) {
+      return keys;
+    }
+    size = _snapshot.size();
+    if ((keys = _snapshot.getIntColumn(colID)) != null) {
+      // int values are used as is
+    } else if ((dValues = _snapshot.getDoubleColumn(colID)) != null) {
+      cKeys = ColumnKeys.forDoubles(size);
+      for (i = 0; i < size; i++) {
+        cKeys.setDouble(i, dValues[i]);
+      }
+      keys = cKeys.getKeys();
+    } else if ((sValues = _snapshot.getTextColumn(colID)) != null) {
+      cKeys = ColumnKeys.forStrings(size);
+      for (i = 0; i < size; i++) {
+        cKeys.setString(i, sValues[i]);
+      }
+      keys = cKeys.getKeys();
+    } else {
+      // column without sortable data (e.g. HSP summary): natural order
+      keys = new int[size];
+    }
+    synchronized (this) {
+      _keys[colID] = keys;
+    }
+    return keys;
+  }
+}
@@ -16,12 +16,22 @@
  */
 package bzh.plealog.bioinfo.ui.blast.hittable;
 
+import java.awt.Color;
 import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.swing.JTable;
 import javax.swing.table.TableCellRenderer;
 
 import bzh.plealog.bioinfo.api.data.searchresult.SRHit;
+import bzh.plealog.bioinfo.ui.blast.config.AbstractPropertiesConfig;
+import bzh.plealog.bioinfo.ui.blast.config.ConfigManager;
 import bzh.plealog.bioinfo.ui.blast.config.color.ColorPolicyConfig;
 import bzh.plealog.bioinfo.ui.blast.saviewer.HspSummaryDraw;
 
@@ -29,12 +39,117 @@ import bzh.plealog.bioinfo.ui.blast.saviewer.HspSummaryDraw;
  * This is a dedicated renderer to display a tiny graphical view within
  * the main Hit Table. This tiny graphical view summarizes HSPs matching
  * a query.
+ * <br><br>
+ * Since this renderer is called for every visible row while scrolling, the
+ * drawing of a hit is kept in a bounded cache of thumbnail images: a hit is
+ * only drawn again when its cell size or selection state changes, or when its
+ * thumbnail has been evicted from the cache. The cache is automatically
+ * cleared when the color policy is replaced or modified; call clearCache()
+ * when the data model changes.
  * 
  * @author Patrick G. Durand
  */
 public class HSPSummaryCellRenderer extends HspSummaryDraw implements TableCellRenderer {
   private static final long serialVersionUID = 1377311928870476910L;
 
+  private LinkedHashMap<ThumbnailKey, BufferedImage> _thumbnails;
+  private long _cachedPixels;
+  private SRHit _curHit;
+  // color policy used to draw cached thumbnails
+  private AbstractPropertiesConfig _policy;
+  private int _policyRevision;
+
+  /** maximum number of pixels kept in the cache (about 16 Mb) */
+  private static final long MAX_CACHED_PIXELS = 4L * 1024L * 1024L;
+
+  public HSPSummaryCellRenderer() {
+    super();
+    _thumbnails = new LinkedHashMap<ThumbnailKey, BufferedImage>(256, 0.75f, true);
+  }
+
+  /**
+   * Removes all thumbnails from the cache.
+   */
+  public void clearCache() {
+    _thumbnails.clear();
+    _cachedPixels = 0;
+  }
+
+  /**
+   * Returns the number of thumbnails currently cached.
+   */
+  public int getCacheSize() {
+    return _thumbnails.size();
+  }
+
+  public void setHit(SRHit hit) {
+    super.setHit(hit);
+    _curHit = hit;
+  }
+
+  private void putThumbnail(ThumbnailKey key, BufferedImage img) {
+    Iterator<Map.Entry<ThumbnailKey, BufferedImage>> iter;
+    BufferedImage old;
+
+    _thumbnails.put(key, img);
+    _cachedPixels += (long) img.getWidth() * (long) img.getHeight();
+    // evict least recently used thumbnails
+    iter = _thumbnails.entrySet().iterator();
+    while (_cachedPixels > MAX_CACHED_PIXELS && iter.hasNext()) {
+      old = iter.next().getValue();
+      if (old == img)
+        break;
+      _cachedPixels -= (long) old.getWidth() * (long) old.getHeight();
+      iter.remove();
+    }
+  }
+
+  /**
+   * Clears the cache when the color policy used by HspSummaryDraw has been
+   * replaced or modified since thumbnails were drawn.
+   */
+  private void checkColorPolicy() {
+    AbstractPropertiesConfig policy;
+    int revision;
+
+    policy = ConfigManager.getConfig(ColorPolicyConfig.NAME);
+    revision = policy != null ? policy.getRevision() : 0;
+    if (policy != _policy || revision != _policyRevision) {
+      clearCache();
+      _policy = policy;
+      _policyRevision = revision;
+    }
+  }
+
+  public void paintComponent(Graphics g) {
+    ThumbnailKey key;
+    BufferedImage img;
+    Graphics2D ig;
+    AffineTransform tr;
+    int w, h;
+
+    w = getWidth();
+    h = getHeight();
+    tr = ((Graphics2D) g).getTransform();
+    // no cache on scaled displays, otherwise thumbnails would look blurred
+    if (_curHit == null || w <= 0 || h <= 0 || tr.getScaleX() != 1.0 || tr.getScaleY() != 1.0) {
+      super.paintComponent(g);
+      return;
+    }
+    checkColorPolicy();
+    key = new ThumbnailKey(_curHit, w, h, isSelected(), getBackground(), getForeground());
+    img = _thumbnails.get(key);
+    if (img == null) {
+      img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+      ig = img.createGraphics();
+      ig.setFont(getFont());
+      super.paintComponent(ig);
+      ig.dispose();
+      putThumbnail(key, img);
+    }
+    g.drawImage(img, 0, 0, null);
+  }
+
   public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus,
       int row, int column) {
     if (isSelected) {
@@ -56,4 +171,42 @@ public class HSPSummaryCellRenderer extends HspSummaryDraw implements TableCellR
     this.setSelected(isSelected);
     return this;
   }
+
+  /**
+   * Identifies a thumbnail. Hits are compared by reference.
+   */
+  private static class ThumbnailKey {
+    private SRHit hit;
+    private int width;
+    private int height;
+    private boolean selected;
+    private int bkColor;
+    private int fgColor;
+
+    public ThumbnailKey(SRHit hit, int width, int height, boolean selected, Color bk, Color fg) {
+      this.hit = hit;
+      this.width = width;
+      this.height = height;
+      this.selected = selected;
+      this.bkColor = bk != null ? bk.getRGB() : 0;
+      this.fgColor = fg != null ? fg.getRGB() : 0;
+    }
+
+    public int hashCode() {
+      int h = System.identityHashCode(hit);
+      h = 31 * h + width;
+      h = 31 * h + height;
+      h = 31 * h + (selected ? 1 : 0);
+      h = 31 * h + bkColor;
+      return 31 * h + fgColor;
+    }
+
+    public boolean equals(Object obj) {
+      if (!(obj instanceof ThumbnailKey))
+        return false;
+      ThumbnailKey k = (ThumbnailKey) obj;
+      return hit == k.hit && width == k.width && height == k.height && selected == k.selected
+          && bkColor == k.bkColor && fgColor == k.fgColor;
+    }
+  }
 }
\ No newline at end of file
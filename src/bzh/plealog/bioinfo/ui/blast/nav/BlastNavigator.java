@@ -18,30 +18,39 @@ package bzh.plealog.bioinfo.ui.blast.nav;
 
 import java.awt.BorderLayout;
 import java.awt.Component;
+import java.awt.Container;
 import java.awt.Dimension;
 import java.awt.FontMetrics;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 
+import javax.swing.AbstractListModel;
+import javax.swing.ComboBoxModel;
 import javax.swing.JButton;
 import javax.swing.JComboBox;
+import javax.swing.JComponent;
 import javax.swing.JLabel;
+import javax.swing.JList;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JTabbedPane;
 import javax.swing.JTextField;
+import javax.swing.ListCellRenderer;
+import javax.swing.SwingUtilities;
+import javax.swing.event.PopupMenuEvent;
+import javax.swing.event.PopupMenuListener;
+import javax.swing.plaf.basic.ComboPopup;
 
 import com.jgoodies.forms.builder.DefaultFormBuilder;
 import com.jgoodies.forms.layout.FormLayout;
 import com.plealog.genericapp.api.EZEnvironment;
-import com.plealog.genericapp.ui.common.ResizableComboboxPopupMenuListener;
 
-import bzh.plealog.bioinfo.api.data.searchresult.SRHit;
 import bzh.plealog.bioinfo.api.data.searchresult.SRIteration;
 import bzh.plealog.bioinfo.api.data.searchresult.SROutput;
 import bzh.plealog.bioinfo.api.data.searchresult.SRParameters;
 import bzh.plealog.bioinfo.api.data.searchresult.SRRequestInfo;
 import bzh.plealog.bioinfo.ui.blast.core.BlastEntry;
+import bzh.plealog.bioinfo.ui.blast.core.BlastEntryStatistics;
 import bzh.plealog.bioinfo.ui.blast.core.BlastIteration;
 import bzh.plealog.bioinfo.ui.blast.event.BlastIterationListEvent;
 import bzh.plealog.bioinfo.ui.blast.event.BlastIterationListListener;
@@ -61,6 +70,7 @@ public class BlastNavigator extends JPanel {
   private JTextField _hits;
   private JTextField _hsps;
   private JComboBox<BlastIteration> _iterations;
+  private IterationComboModel _iterationsModel;
   private JButton _btnInfo;
   private BlastIterationListSupport _iterSelectionSupport;
   private BlastEntry _entry;
@@ -68,6 +78,10 @@ public class BlastNavigator extends JPanel {
   private int _nHits;
   private int _nHsps;
 
+  // number of items used to compute the width of the iteration popup
+  private static final int POPUP_SAMPLE_SIZE = 100;
+  private static final int POPUP_MAX_WIDTH = 640;
+
   /**
    * Default constructor.
    */
@@ -104,9 +118,10 @@ public class BlastNavigator extends JPanel {
    * Utility method to create a JComboBox.
    */
   private void createCombo() {
-    _iterations = new JComboBox<>();
+    _iterationsModel = new IterationComboModel();
+    _iterations = new JComboBox<>(_iterationsModel);
     _iterations.addActionListener(new IterationComboListener());
-    _iterations.addPopupMenuListener(new ResizableComboboxPopupMenuListener());
+    _iterations.addPopupMenuListener(new IterationPopupMenuListener());
   }
 
   /**
@@ -155,7 +170,7 @@ public class BlastNavigator extends JPanel {
    * Reset the content of this BlastSummary.
    */
   public void clearContent() {
-    _iterations.removeAllItems();
+    _iterationsModel.setEntry(null);
     _hits.setText("");
     _hsps.setText("");
     _iterations.setEnabled(false);
@@ -166,30 +181,28 @@ public class BlastNavigator extends JPanel {
   }
 
   /**
-   * Count the total number of Hits and HSPs contained in the Blast file
-   * displayed in this BlastSummary.
-   * 
-   * @return an array of two integers. First integer gives the total number of
-   *         Hits, second gives the total number of HSPs.
+   * Display the number of Hits and HSPs of an iteration. HSP counts are only
+   * available when the BlastEntry statistics have been computed.
    */
-  private int[] countHitHsp(SROutput bo, int iterNum) {
-    SRIteration bIter;
-    SRHit hit;
-    int[] vals = new int[2];
-    int i;
+  private void displayHitHsp(BlastEntry entry, int iterNum) {
+    BlastEntryStatistics stats;
+    SROutput bo;
 
-    vals[0] = 0;// Hit count
-    vals[1] = 0;// Hsps count
+    bo = entry.getResult();
+    stats = entry.getStatistics();
     if (iterNum >= 0 && iterNum < bo.countIteration()) {
-      bIter = bo.getIteration(iterNum);
-      vals[0] = bIter.countHit();
-      for (i = 0; i < vals[0]; i++) {
-        hit = bIter.getHit(i);
-        vals[1] += hit.countHsp();
+      if (stats != null) {
+        _nHits = stats.getHitCount(iterNum);
+        _nHsps = stats.getHspCount(iterNum);
+      } else {
+        _nHits = bo.getIteration(iterNum).countHit();
+        _nHsps = -1;
       }
+    } else {
+      _nHits = _nHsps = 0;
     }
-
-    return vals;
+    _hits.setText(String.valueOf(_nHits));
+    _hsps.setText(_nHsps >= 0 ? String.valueOf(_nHsps) : "?");
   }
 
   /**
@@ -201,43 +214,127 @@ public class BlastNavigator extends JPanel {
       clearContent();
       return;
     }
-    SROutput bo;
-    int iVal, size;
-    int[] count;
+    int size;
 
     _iterNum = 0;
-    bo = entry.getResult();
-    _iterations.removeAllItems();
-    size = bo.countIteration();
-    for (iVal = 0; iVal < size; iVal++) {
-      _iterations.addItem(new BlastIteration(entry, iVal));
+    size = entry.getResult().countIteration();
+    // BlastIterations are created when needed by the combo box
+    _iterationsModel.setEntry(entry);
+    displayHitHsp(entry, 0);
+    if (entry.getStatistics() == null) {
+      new StatisticsThread(entry).start();
     }
-    count = countHitHsp(bo, 0);
-    _nHits = iVal = count[0];
-    _hits.setText(iVal >= 0 ? String.valueOf(iVal) : "?");
-    _nHsps = iVal = count[1];
-    _hsps.setText(iVal >= 0 ? String.valueOf(iVal) : "?");
     _iterations.setEnabled(size != 1);
     _btnInfo.setEnabled(true);
   }
 
+  /**
+   * Computes the statistics of a BlastEntry in the background.
+   */
+  private class StatisticsThread extends Thread {
+    private BlastEntry entry;
+
+    public StatisticsThread(BlastEntry entry) {
+      this.entry = entry;
+    }
+
+    public void run() {
+      final BlastEntryStatistics stats = BlastEntryStatistics.compute(entry.getResult());
+      SwingUtilities.invokeLater(new Runnable() {
+        public void run() {
+          entry.setStatistics(stats);
+          if (_entry == entry) {
+            displayHitHsp(entry, _iterNum);
+          }
+        }
+      });
+    }
+  }
+
+  /**
+   * Combo box model creating BlastIteration objects only when they are
+   * requested.
+   */
+  private class IterationComboModel extends AbstractListModel<BlastIteration>
+      implements ComboBoxModel<BlastIteration> {
+    private static final long serialVersionUID = -1789553431946620537L;
+    private BlastEntry _curEntry;
+    private BlastIteration[] _items = new BlastIteration[0];
+    private Object _selected;
+    private int _selectedIndex = -1;
+
+    public void setEntry(BlastEntry entry) {
+      int oldSize;
+
+      oldSize = _items.length;
+      _items = new BlastIteration[0];
+      _selected = null;
+      _selectedIndex = -1;
+      // listeners may be notified (and call back this method) here: new entry
+      // is set afterwards
+      if (oldSize != 0) {
+        fireIntervalRemoved(this, 0, oldSize - 1);
+      }
+      _curEntry = entry;
+      if (entry != null) {
+        _items = new BlastIteration[entry.getResult().countIteration()];
+        setPrototypeIteration(getElementAt(0));
+        if (_items.length != 0) {
+          fireIntervalAdded(this, 0, _items.length - 1);
+          // same behavior as JComboBox.addItem(): first item is selected
+          setSelectedItem(getElementAt(0));
+        }
+      }
+    }
+
+    public int getSize() {
+      return _items.length;
+    }
+
+    public BlastIteration getElementAt(int index) {
+      if (index < 0 || index >= _items.length)
+        return null;
+      if (_items[index] == null) {
+        _items[index] = new BlastIteration(_curEntry, index);
+      }
+      return _items[index];
+    }
+
+    public void setSelectedItem(Object anItem) {
+      if ((_selected != null && !_selected.equals(anItem))
+          || (_selected == null && anItem != null)) {
+        _selected = anItem;
+        if (anItem instanceof BlastIteration && ((BlastIteration) anItem).getEntry() == _curEntry) {
+          _selectedIndex = ((BlastIteration) anItem).getIterNum();
+        } else {
+          _selectedIndex = -1;
+        }
+        fireContentsChanged(this, -1, -1);
+      }
+    }
+
+    public Object getSelectedItem() {
+      return _selected;
+    }
+
+    /**
+     * Same as JComboBox.getSelectedIndex() without creating all items up to
+     * the selected one.
+     */
+    public int getSelectedIndex() {
+      return _selectedIndex;
+    }
+  }
+
   private class IterationComboListener implements ActionListener {
     public void actionPerformed(ActionEvent e) {
       BlastIteration iter;
-      SROutput bo;
-      int[] count;
-      int iVal;
 
       // iter = (BlastIteration) _iterations.getSelectedItem();
-      _iterNum = _iterations.getSelectedIndex();
+      _iterNum = _iterationsModel.getSelectedIndex();
       if (_iterNum != -1) {
-        iter = _iterations.getItemAt(_iterNum);
-        bo = iter.getEntry().getResult();
-        count = countHitHsp(bo, iter.getIterNum());
-        _nHits = iVal = count[0];
-        _hits.setText(iVal >= 0 ? String.valueOf(iVal) : "?");
-        _nHsps = iVal = count[1];
-        _hsps.setText(iVal >= 0 ? String.valueOf(iVal) : "?");
+        iter = _iterationsModel.getElementAt(_iterNum);
+        displayHitHsp(iter.getEntry(), iter.getIterNum());
       } else {
         iter = null;
         clearContent();
@@ -247,6 +344,97 @@ public class BlastNavigator extends JPanel {
     }
   }
 
+  /**
+   * Returns the popup of the iteration combo box.
+   */
+  private ComboPopup getIterationsPopup() {
+    Object child;
+    int i;
+
+    for (i = 0; i < _iterations.getUI().getAccessibleChildrenCount(_iterations); i++) {
+      child = _iterations.getUI().getAccessibleChild(_iterations, i);
+      if (child instanceof ComboPopup) {
+        return (ComboPopup) child;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Sets the item used by the iteration combo box and its popup list to compute
+   * their size. Without it, Swing creates all BlastIterations to do so, each time
+   * the content or the selection changes.
+   */
+  @SuppressWarnings("unchecked")
+  private void setPrototypeIteration(BlastIteration prototype) {
+    JList<Object> list;
+    ComboPopup popup;
+
+    _iterations.setPrototypeDisplayValue(prototype);
+    popup = getIterationsPopup();
+    if (popup != null && prototype != null) {
+      list = popup.getList();
+      list.setPrototypeCellValue(prototype);
+    }
+  }
+
+  /**
+   * Resizes the popup of the iteration combo box so that item labels are not
+   * truncated. Contrary to ResizableComboboxPopupMenuListener, only a sample of
+   * items is used to compute the width, and list cells get a fixed size: this
+   * avoids creating all BlastIterations each time the popup is displayed.
+   */
+  private class IterationPopupMenuListener implements PopupMenuListener {
+    @SuppressWarnings("unchecked")
+    public void popupMenuWillBecomeVisible(PopupMenuEvent e) {
+      ListCellRenderer<? super Object> renderer;
+      JList<Object> list;
+      JComponent scroller;
+      ComboPopup popup;
+      Dimension dim;
+      int i, size, width, height, selected, idx;
+
+      popup = getIterationsPopup();
+      if (popup == null || _iterationsModel.getSize() == 0) {
+        return;
+      }
+      list = popup.getList();
+      renderer = list.getCellRenderer();
+      size = Math.min(_iterationsModel.getSize(), POPUP_SAMPLE_SIZE);
+      selected = _iterationsModel.getSelectedIndex();
+      width = height = 0;
+      // the first items and the selected one, which is displayed when popup opens
+      for (i = 0; i <= size; i++) {
+        idx = (i < size ? i : selected);
+        if (i == size && selected < size) {
+          break;
+        }
+        dim = renderer.getListCellRendererComponent(list, _iterationsModel.getElementAt(idx), idx, false, false)
+            .getPreferredSize();
+        width = Math.max(width, dim.width);
+        height = Math.max(height, dim.height);
+      }
+      width = Math.min(Math.max(width + 25, _iterations.getWidth()), POPUP_MAX_WIDTH);
+      list.setFixedCellHeight(height);
+      list.setFixedCellWidth(width);
+      if (popup instanceof Container && ((Container) popup).getComponentCount() != 0) {
+        scroller = (JComponent) ((Container) popup).getComponent(0);
+        dim = scroller.getPreferredSize();
+        if (width > dim.width) {
+          dim.width = width;
+          scroller.setPreferredSize(dim);
+          scroller.setMaximumSize(dim);
+        }
+      }
+    }
+
+    public void popupMenuWillBecomeInvisible(PopupMenuEvent e) {
+    }
+
+    public void popupMenuCanceled(PopupMenuEvent e) {
+    }
+  }
+
   public void addIterationListener(BlastIterationListListener listener) {
     _iterSelectionSupport.addBlastIterationListListener(listener);
   }
@@ -449,7 +637,7 @@ public class BlastNavigator extends JPanel {
       obj = bo.getBlastOutputParam().getValue(SRParameters.EXPECT_DESCRIPTOR_KEY);
       expect_.setText(obj != null ? obj.toString() : "?");
       hits_.setText(nHits >= 0 ? String.valueOf(nHits) : "?");
-      hsps_.setText(nHits >= 0 ? String.valueOf(nHsps) : "?");
+      hsps_.setText(nHsps >= 0 ? String.valueOf(nHsps) : "?");
       if (entry.getResult().getBlastType() == SROutput.PSIBLAST) {
         iNum_.setText("Iteration " + String.valueOf(iterNum + 1));
       } else {
@@ -0,0 +1,54 @@
+/* Copyright (C) 2003-2019 Patrick G. Durand
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *     https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ */
+package bzh.plealog.bioinfo.ui.blast.resulttable;
+
+import java.io.IOException;
+
+import bzh.plealog.bioinfo.api.data.searchresult.SRClassification;
+import bzh.plealog.bioinfo.api.data.searchresult.SRIteration;
+import bzh.plealog.bioinfo.api.data.searchresult.SROutput;
+
+/**
+ * Receives the results of a SummaryTableModel view one iteration at a time. See
+ * SummaryTableModel.writeResultFromView().
+ * 
+ * @author Patrick G. Durand
+ */
+public interface SROutputSink {
+  /**
+   * Called once before any iteration.
+   * 
+   * @param header result of the first row of the view. Use it to get program,
+   * parameters and request information.
+   */
+  public void begin(SROutput header) throws IOException;
+
+  /**
+   * Called for each row of the view, in row order.
+   * 
+   * @param sro result of the row
+   * @param iteration the iteration to write
+   */
+  public void addIteration(SROutput sro, SRIteration iteration) throws IOException;
+
+  /**
+   * Called once after the last iteration.
+   * 
+   * @param classification classification data merged from all rows
+   */
+  public void end(SRClassification classification) throws IOException;
+}
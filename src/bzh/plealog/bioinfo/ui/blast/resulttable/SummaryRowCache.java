@@ -0,0 +1,218 @@
+/* Copyright (C) 2003-2019 Patrick G. Durand
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *     https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ */
+package bzh.plealog.bioinfo.ui.blast.resulttable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import bzh.plealog.bioinfo.api.data.searchjob.QueryBase;
+import bzh.plealog.bioinfo.api.data.searchjob.SJFileSummary;
+
+/**
+ * A bounded LRU cache of SJFileSummary objects (and associated query status)
+ * used by SummaryTableModel. It avoids reloading the same summary for each
+ * column of a row during a repaint, which is costly when QueryBase is backed by
+ * a disk-based storage. In addition, rows surrounding a missed one can be
+ * prefetched in the background, so that scrolling mostly hits the cache.
+ * <br><br>
+ * Only rows having a final status are kept: data of a waiting or running query
+ * change during job execution, so they are reloaded on each request.
+ *
+ * @author Patrick G. Durand
+ */
+public class SummaryRowCache {
+  private QueryBase _query;
+  private LinkedHashMap<Integer, SummaryRow> _cache;
+  private AtomicLong _hits = new AtomicLong();
+  private AtomicLong _misses = new AtomicLong();
+  // used to discard obsolete prefetch requests
+  private AtomicInteger _generation = new AtomicInteger();
+
+  private static final ExecutorService PREFETCHER = Executors.newSingleThreadExecutor(new ThreadFactory() {
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, "SummaryRowCache-prefetch");
+      t.setDaemon(true);
+      return t;
+    }
+  });
+
+  /**
+   * Data associated to a single row.
+   */
+  public static class SummaryRow {
+    private SJFileSummary summary;
+    private String status;
+
+    private SummaryRow(SJFileSummary summary, String status) {
+      this.summary = summary;
+      this.status = status;
+    }
+
+    public SJFileSummary getSummary() {
+      return summary;
+    }
+
+    public String getStatus() {
+      return status;
+    }
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param query the data model
+   * @param capacity maximum number of rows kept in memory
+   */
+  @SuppressWarnings("serial")
+  public SummaryRowCache(QueryBase query, final int capacity) {
+    _query = query;
+    _cache = new LinkedHashMap<Integer, SummaryRow>(capacity, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, SummaryRow> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  private SummaryRow load(int idx) {
+    return new SummaryRow(_query.getSummary(idx), _query.getStatus(idx));
+  }
+
+  /**
+   * Figures out whether or not a query status is a final one, i.e. data of that
+   * query will not change anymore.
+   *
+   * @param status a query status as returned by QueryBase.getStatus(int)
+   */
+  public static boolean isFinalStatus(String status) {
+    return status != null && !status.startsWith(QueryBase.STATUS_WAITING)
+        && !status.startsWith(QueryBase.STATUS_RUNNING) && !status.startsWith(QueryBase.STATUS_UNKNWON);
+  }
+
+  /**
+   * Returns the data of a row.
+   *
+   * @param idx SJFileSummary index
+   */
+  public SummaryRow get(int idx) {
+    SummaryRow row;
+
+    synchronized (_cache) {
+      row = _cache.get(idx);
+    }
+    if (row != null) {
+      _hits.incrementAndGet();
+      return row;
+    }
+    _misses.incrementAndGet();
+    row = load(idx);
+    if (isFinalStatus(row.getStatus())) {
+      synchronized (_cache) {
+        _cache.put(idx, row);
+      }
+    }
+    return row;
+  }
+
+  /**
+   * Returns true if the data of a row is available in the cache.
+   *
+   * @param idx SJFileSummary index
+   */
+  public boolean contains(int idx) {
+    synchronized (_cache) {
+      return _cache.containsKey(idx);
+    }
+  }
+
+  /**
+   * Loads a set of rows in the background. A new call discards the rows not yet
+   * loaded by a previous one. Since loading happens on another thread, the
+   * QueryBase has to support concurrent access.
+   *
+   * @param ids SJFileSummary indexes
+   */
+  public void prefetch(final int[] ids) {
+    final int generation = _generation.incrementAndGet();
+
+    PREFETCHER.execute(new Runnable() {
+      @Override
+      public void run() {
+        SummaryRow row;
+        for (int idx : ids) {
+          if (generation != _generation.get()) {
+            return;
+          }
+          if (contains(idx)) {
+            continue;
+          }
+          row = load(idx);
+          if (!isFinalStatus(row.getStatus())) {
+            continue;
+          }
+          synchronized (_cache) {
+            if (generation == _generation.get()) {
+              _cache.put(idx, row);
+            }
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Removes a row from the cache.
+   *
+   * @param idx SJFileSummary index
+   */
+  public void invalidate(int idx) {
+    _generation.incrementAndGet();
+    synchronized (_cache) {
+      _cache.remove(idx);
+    }
+  }
+
+  /**
+   * Removes all rows from the cache and cancels pending prefetch.
+   */
+  public void clear() {
+    _generation.incrementAndGet();
+    synchronized (_cache) {
+      _cache.clear();
+    }
+  }
+
+  /**
+   * Returns the number of requests served from the cache.
+   */
+  public long getHits() {
+    return _hits.get();
+  }
+
+  /**
+   * Returns the number of requests that required to load data from the QueryBase.
+   */
+  public long getMisses() {
+    return _misses.get();
+  }
+}
@@ -145,6 +145,17 @@ public class SummaryTable extends JKTable {
     model.setViewType(vType);
   }
 
+  /**
+   * Incremental update of the table while a job is still running. See
+   * SummaryTableModel.updateRunningQueries().
+   * 
+   * @return the number of newly completed queries
+   */
+  public int updateRunningQueries() {
+    SummaryTableModel model = (SummaryTableModel) this.getModel();
+    return model.updateRunningQueries();
+  }
+
   /**
    * Returns the types of classification to view.
    * See SRFileSummary.getClassificationForView()
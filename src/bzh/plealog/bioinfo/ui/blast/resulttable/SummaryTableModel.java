@@ -17,9 +17,26 @@
 package bzh.plealog.bioinfo.ui.blast.resulttable;
 
 import java.awt.Color;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.swing.Timer;
+import javax.swing.event.TableModelEvent;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.log4j.Logger;
@@ -29,10 +46,10 @@ import bzh.plealog.bioinfo.api.data.feature.AnnotationDataModelConstants;
 import bzh.plealog.bioinfo.api.data.searchjob.QueryBase;
 import bzh.plealog.bioinfo.api.data.searchjob.SJFileSummary;
 import bzh.plealog.bioinfo.api.data.searchjob.SJTermSummary;
+import bzh.plealog.bioinfo.api.data.searchresult.SRClassification;
 import bzh.plealog.bioinfo.api.data.searchresult.SROutput;
 import bzh.plealog.bioinfo.io.searchresult.csv.ExtractAnnotation;
 import bzh.plealog.bioinfo.ui.blast.core.QueryBaseUI;
-import bzh.plealog.bioinfo.ui.blast.resulttable.sort.Entity;
 import bzh.plealog.bioinfo.ui.blast.resulttable.sort.SerialEntityBag;
 import bzh.plealog.bioinfo.ui.blast.resulttable.sort.SummaryTableModelSorter;
 import bzh.plealog.bioinfo.ui.resources.SVMessages;
@@ -40,6 +57,7 @@ import bzh.plealog.bioinfo.ui.util.JKTableModel;
 import bzh.plealog.bioinfo.ui.util.JKTableModelSorter;
 import bzh.plealog.bioinfo.ui.util.ProgressTinyDialog;
 import bzh.plealog.bioinfo.ui.util.TableHeaderColumnItem;
+import bzh.plealog.bioinfo.util.ExportMonitor;
 
 /**
  * This is the table model for the JTable displaying the list of Blast hits for
@@ -53,13 +71,36 @@ public class SummaryTableModel extends JKTableModel {
   private TableHeaderColumnItem[] _colItemsReference;
   private List<String> _classificationsToView;
   private boolean[] _hasHits; // use to optimize display with big job
+  private BitSet _completed; // queries for which _hasHits is final
   private int _queryStatus = -1;
   private QueryBaseUI _query;
   private SerialEntityBag _sortedSummaries;
   private int _rows = -1;
-  private HashMap<Integer, Integer> _indexConvertor;
-  private ArrayList<Integer> _viewTypeDataBinner;
+  // table row index to SJFileSummary index
+  private int[] _viewTypeDataBinner;
+  // SJFileSummary index to table row index (-1 if not visible): lazily created
+  private int[] _indexConvertor;
   private VIEW_TYPE _viewType = VIEW_TYPE.ALL;
+  private SummaryRowCache _rowCache;
+  // table rows of the last prefetch request
+  private int _prefetchFrom = -1;
+  private int _prefetchTo = -1;
+  // formatted classification cells, per summary index: hit and query classifications
+  private Map<Integer, String> _hitTermsCache = createTermsCache();
+  private Map<Integer, String> _queryTermsCache = createTermsCache();
+  // HTML fragment of each classification term, shared by all rows
+  private HashMap<String, String> _termFragments = new HashMap<>();
+  // checks newly completed queries while the job is running
+  private Timer _runningJobTimer;
+
+  // size of the summary cache and number of rows prefetched around a missed one
+  private static final int ROW_CACHE_SIZE = 2000;
+  private static final int ROW_PREFETCH_WINDOW = 100;
+  private static final String NO_TERMS = "";
+  // number of results loaded ahead by each worker thread in writeResultFromView()
+  private static final int RESULT_PREFETCH_PER_THREAD = 4;
+  // delay between two checks of a running job, in milliseconds
+  private static final int RUNNING_JOB_REFRESH_DELAY = 2000;
 
   public static final Color COLOR_QUERY = new Color(95, 159, 253);
   public static final Color COLOR_HIT = new Color(224, 120, 92);
@@ -75,6 +116,7 @@ public class SummaryTableModel extends JKTableModel {
   private static final String DEF_COL_PROP_KEY = "resTable.columns";
   private static final String SORT_COL_PROP_KEY = "resTable.columns.sort.id";
   private static final String SORT_ASCEND_PROP_KEY = "resTable.columns.sort.asc";
+  private static final String SORT_THENBY_PROP_KEY = "resTable.columns.sort.thenby";
   public static final String DEF_COL_SIZE_PROP_KEY = "resTable.columns.size";
 
   // DO NOT MODIFY THESE VALUES: ALWAYS INCREMENT !
@@ -264,6 +306,11 @@ public class SummaryTableModel extends JKTableModel {
     return SORT_ASCEND_PROP_KEY;
   }
 
+  @Override
+  public String getSecondarySortColumnsPropertyName() {
+    return SORT_THENBY_PROP_KEY;
+  }
+
   @Override
   public TableHeaderColumnItem[] getReferenceColumnHeaders() {
     if (_colItemsReference == null) {
@@ -291,6 +338,7 @@ public class SummaryTableModel extends JKTableModel {
    */
   public void setClassificationsToView(List<String> cToV){
     _classificationsToView = cToV;
+    resetTermsCache();
   }
   
   /**
@@ -316,6 +364,117 @@ public class SummaryTableModel extends JKTableModel {
     }
     return sroMaster;
   }
+  /**
+   * Writes all results of this view to a sink. Contrary to getResultFromView(),
+   * results are never held in memory all together: they are loaded a few rows
+   * ahead of the one being written, then passed to the sink in row order and
+   * released. When the QueryBase supports concurrent access (see
+   * QueryBaseUI.isConcurrentAccessSupported()), results are loaded by worker
+   * threads; otherwise the calling thread loads them.
+   * 
+   * Rows of the view are converted to query indexes when this method starts:
+   * call it from the thread that owns the table, usually the EDT.
+   * 
+   * @param sink where to write results
+   * @param monitor a progress monitor. Can be null.
+   * 
+   * @return false if the process was interrupted by the user
+   * 
+   * @throws IOException if a result cannot be loaded or if sink failed to write data
+   */
+  public boolean writeResultFromView(SROutputSink sink, ExportMonitor monitor) throws IOException {
+    ArrayDeque<Future<SROutput>> pending;
+    ExecutorService loaders = null;
+    SRClassification classification;
+    final QueryBaseUI query;
+    SROutput sro;
+    int[] ids;
+    boolean started = false;
+    int i, next, rows, nThreads = 0;
+
+    query = _query;
+    if (query == null) {
+      return true;
+    }
+    rows = getRowCount();
+    ids = new int[rows];
+    for (i = 0; i < rows; i++) {
+      ids[i] = getSummaryIdx(i);
+    }
+    if (monitor != null) {
+      monitor.setMaxSteps(rows);
+    }
+    if (query.isConcurrentAccessSupported()) {
+      nThreads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+      loaders = Executors.newFixedThreadPool(nThreads);
+    }
+    pending = new ArrayDeque<>();
+    classification = CoreSystemConfigurator.getSRFactory().creationBClassification();
+    next = 0;
+    try {
+      for (i = 0; i < rows; i++) {
+        if (loaders != null) {
+          // keep a bounded number of results loaded ahead
+          while (next < rows && pending.size() < RESULT_PREFETCH_PER_THREAD * nThreads) {
+            final int idx = ids[next++];
+            pending.add(loaders.submit(new Callable<SROutput>() {
+              @Override
+              public SROutput call() {
+                return query.getResult(idx);
+              }
+            }));
+          }
+          sro = getLoadedResult(pending.poll(), ids[i]);
+        } else {
+          sro = loadResult(query, ids[i]);
+        }
+        if (sro == null) {
+          throw new IOException("no result available for query: " + (ids[i] + 1));
+        }
+        if (!started) {
+          sink.begin(sro);
+          started = true;
+        }
+        //in this view model, each sro contains a single Iteration, always!
+        sink.addIteration(sro, sro.getIteration(0));
+        ExtractAnnotation.addClassificationdata(classification, sro.getClassification());
+        if (monitor != null) {
+          monitor.addToProgress(1);
+          if (monitor.stopProcessing()) {
+            return false;
+          }
+        }
+      }
+    } finally {
+      if (loaders != null) {
+        loaders.shutdownNow();
+      }
+    }
+    if (started) {
+      sink.end(classification);
+    }
+    return true;
+  }
+
+  private SROutput loadResult(QueryBase query, int idx) throws IOException {
+    try {
+      return query.getResult(idx);
+    } catch (RuntimeException e) {
+      throw new IOException("unable to load result of query: " + (idx + 1), e);
+    }
+  }
+
+  private SROutput getLoadedResult(Future<SROutput> future, int idx) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted while loading results");
+    } catch (ExecutionException e) {
+      throw new IOException("unable to load result of query: " + (idx + 1), e.getCause());
+    }
+  }
+
   /**
    * Set the data model.
    * 
@@ -327,14 +486,18 @@ public class SummaryTableModel extends JKTableModel {
       _query.setListener(null);
       _query.resetInternalData();
     }
+    stopRunningJobRefresh();
     if ((query != null) && (query.allSequencesIndexed())) {
       _query = query;
     } else {
       _query = null;
     }
     _hasHits = null;
+    _completed = null;
     _queryStatus = -1;
     _rows = -1;
+    resetRowCache();
+    resetTermsCache();
 
     _indexConvertor = null;
     _sortedSummaries = null;
@@ -348,9 +511,13 @@ public class SummaryTableModel extends JKTableModel {
     // which does not need any computation
     setSortColumn(RES_FILE_NUM_HEADER);
     setSortColumnAscending(true);
+    setSecondarySortColumns(null, null);
     // inform UI to refresh view
     this.fireTableDataChanged();
 
+    if (_query != null && isRunning(_queryStatus)) {
+      startRunningJobRefresh();
+    }
   }
 
   /**
@@ -362,23 +529,23 @@ public class SummaryTableModel extends JKTableModel {
    * @return table row index
    */
   public int convertSummaryIdxToTableRow(int idx) {
-    Integer value;
-    int i, size;
+    int[] binner, convertor;
+    int i;
 
-    if (_viewTypeDataBinner == null) {
+    binner = _viewTypeDataBinner;
+    if (binner == null) {
       return idx;
     }
-    if (_indexConvertor == null) {// first call
-      if (_viewTypeDataBinner != null) {
-        _indexConvertor = new HashMap<Integer, Integer>();
-        size = _viewTypeDataBinner.size();
-        for (i = 0; i < size; i++) {
-          _indexConvertor.put(_viewTypeDataBinner.get(i), i);
-        }
+    convertor = _indexConvertor;
+    if (convertor == null) {// first call
+      convertor = new int[_query.sequences()];
+      Arrays.fill(convertor, -1);
+      for (i = 0; i < binner.length; i++) {
+        convertor[binner[i]] = i;
       }
+      _indexConvertor = convertor;
     }
-    value = _indexConvertor.get(idx);
-    return value == null ? -1 : value;
+    return (idx < 0 || idx >= convertor.length) ? -1 : convertor[idx];
   }
 
   /**
@@ -389,22 +556,17 @@ public class SummaryTableModel extends JKTableModel {
    * @return SJFileSummary index
    */
   public int convertTableRowToSummaryIdx(int idx) {
-    if (_viewTypeDataBinner == null || _viewTypeDataBinner.size() == 0)
+    if (_viewTypeDataBinner == null || _viewTypeDataBinner.length == 0)
       return idx;
     else
-      return _viewTypeDataBinner.get(idx);
-  }
-
-  @Override
-  public void sortData(boolean force) {
-    super.sortData(force);
-    _indexConvertor = null;
+      return _viewTypeDataBinner[idx];
   }
 
   @Override
   protected void sortData(ProgressTinyDialog monitor, boolean force, JKTableModelSorter<?> sorter) {
     // sort colums
-    SerialEntityBag data = sorter.sort(monitor, getSortColumn(), force);
+    SerialEntityBag data = sorter.sort(monitor, getSortColumn(), isSortColumnAscending(), getSecondarySortColumns(),
+        getSecondarySortColumnsAscending(), force);
 
     if (data == null)
       return;
@@ -423,19 +585,17 @@ public class SummaryTableModel extends JKTableModel {
     if (_query != null) {// clean current query if any
       _query.resetInternalData();
     }
+    stopRunningJobRefresh();
     _hasHits = null;
+    _completed = null;
     _query = null;
+    resetRowCache();
+    resetTermsCache();
     _queryStatus = -1;
     _rows = -1;
-    if (_indexConvertor != null) {
-      _indexConvertor.clear();
-      _indexConvertor = null;
-    }
+    _indexConvertor = null;
     _sortedSummaries = null;
-    if (_viewTypeDataBinner != null) {
-      _viewTypeDataBinner.clear();
-      _viewTypeDataBinner = null;
-    }
+    _viewTypeDataBinner = null;
     this.fireTableDataChanged();
   }
 
@@ -445,7 +605,7 @@ public class SummaryTableModel extends JKTableModel {
     if (_rows != -1)
       return _rows;
     if (_viewTypeDataBinner != null) {
-      rows = _rows = _viewTypeDataBinner.size();
+      rows = _rows = _viewTypeDataBinner.length;
     } else if (_query != null) {
       rows = _rows = _query.sequences();
     } else {
@@ -657,7 +817,7 @@ public class SummaryTableModel extends JKTableModel {
       break;
     case RES_HITCLASSIFICATION:
       if (summary != null) {
-        val = getFormattedTerms(summary.getHitClassificationForView(_classificationsToView));
+        val = getFormattedTerms(_hitTermsCache, rowID, summary, status, true);
       }
       else {
         val = null;
@@ -665,7 +825,7 @@ public class SummaryTableModel extends JKTableModel {
       break;
     case RES_QUERYCLASSIFICATION:
       if (summary != null) {
-        val = getFormattedTerms(summary.getQueryClassificationForView(_classificationsToView));
+        val = getFormattedTerms(_queryTermsCache, rowID, summary, status, false);
       }
       else {
         val = null;
@@ -679,24 +839,202 @@ public class SummaryTableModel extends JKTableModel {
     return (val);
   }
 
-  private Object getFormattedTerms(List<SJTermSummary> mainTerms){
+  /**
+   * Returns a formatted classification cell. Cells are cached since their
+   * creation is costly and they are requested on each repaint. Cells of queries
+   * not yet completed are not cached since their classification may change.
+   */
+  private Object getFormattedTerms(Map<Integer, String> cache, int rowID, SJFileSummary summary, String status,
+      boolean hit) {
+    String value;
+
+    value = cache.get(rowID);
+    if (value == null) {
+      value = getFormattedTerms(hit ? summary.getHitClassificationForView(_classificationsToView)
+          : summary.getQueryClassificationForView(_classificationsToView));
+      if (SummaryRowCache.isFinalStatus(status)) {
+        cache.put(rowID, value);
+      }
+    }
+    return value == NO_TERMS ? null : value;
+  }
+
+  private String getFormattedTerms(List<SJTermSummary> mainTerms){
       if (mainTerms!=null && mainTerms.size()!=0) {
-        StringBuffer buf = new StringBuffer("<html>");
+        StringBuilder buf = new StringBuilder("<html>");
         //just a test to figure out how to simply decorate terms with an icon
         //URL url = SVMessages.class.getResource( "feature.png" );
         for(SJTermSummary term : mainTerms) {
           //buf.append("<img src =" + url + "/> ");
-          buf.append(term.getID());
-          buf.append("&nbsp;");
-          buf.append(term.getDescription());
-          buf.append("<br>");
+          buf.append(getTermFragment(term));
         }
         buf.append("</html>");
         return buf.toString();
     }
-    return null;
+    return NO_TERMS;
   }
-  
+
+  /**
+   * Returns the HTML fragment of a term. Fragments are shared by all rows, since
+   * a same term usually annotates many queries.
+   */
+  private String getTermFragment(SJTermSummary term) {
+    String fragment;
+
+    synchronized (_termFragments) {
+      fragment = _termFragments.get(term.getID());
+      if (fragment == null) {
+        fragment = term.getID() + "&nbsp;" + term.getDescription() + "<br>";
+        _termFragments.put(term.getID(), fragment);
+      }
+    }
+    return fragment;
+  }
+
+  @SuppressWarnings("serial")
+  private static Map<Integer, String> createTermsCache() {
+    return Collections.synchronizedMap(new LinkedHashMap<Integer, String>(ROW_CACHE_SIZE, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+        return size() > ROW_CACHE_SIZE;
+      }
+    });
+  }
+
+  private void resetTermsCache() {
+    _hitTermsCache.clear();
+    _queryTermsCache.clear();
+    synchronized (_termFragments) {
+      _termFragments.clear();
+    }
+  }
+
+  /**
+   * Returns the SJFileSummary index of a table row.
+   */
+  private int getSummaryIdx(int row) {
+    if (_viewTypeDataBinner != null) {
+      return _viewTypeDataBinner[row];
+    } else {
+      if (_sortedSummaries != null) {
+        return _sortedSummaries.getId(row, this.isSortColumnAscending());
+      } else {
+        if (this.isSortColumnAscending())
+          return row;
+        else
+          return getRowCount() - 1 - row;
+      }
+    }
+  }
+
+  /**
+   * Returns the summary and status of a row. Data come from a cache: on a miss
+   * outside the rows of the previous prefetch request, surrounding rows are
+   * prefetched in the background.
+   */
+  private SummaryRowCache.SummaryRow getCachedRow(int row, int rowID) {
+    SummaryRowCache cache = _rowCache;
+    if (cache == null) {
+      cache = _rowCache = new SummaryRowCache(_query, ROW_CACHE_SIZE);
+    }
+    // rows of a running job are never cached: do not restart a prefetch for each
+    // of them, only when the user scrolls away from the previous window
+    if ((row < _prefetchFrom || row > _prefetchTo) && !cache.contains(rowID)) {
+      prefetchRows(row - ROW_PREFETCH_WINDOW, row + ROW_PREFETCH_WINDOW);
+    }
+    return cache.get(rowID);
+  }
+
+  /**
+   * Loads in the background the data of a range of rows. Usually, there is no
+   * need to call this method since the model automatically prefetches rows
+   * surrounding the one being displayed. Nothing is done unless the QueryBase
+   * supports concurrent access (see QueryBaseUI.isConcurrentAccessSupported()).
+   * 
+   * @param fromRow first row (inclusive)
+   * @param toRow last row (inclusive)
+   */
+  public void prefetchRows(int fromRow, int toRow) {
+    SummaryRowCache cache = _rowCache;
+    int[] ids;
+    int i, rows;
+
+    if (_query == null || cache == null || !_query.isConcurrentAccessSupported()) {
+      return;
+    }
+    _prefetchFrom = fromRow;
+    _prefetchTo = toRow;
+    rows = getRowCount();
+    fromRow = Math.max(0, fromRow);
+    toRow = Math.min(rows - 1, toRow);
+    if (fromRow > toRow) {
+      return;
+    }
+    ids = new int[toRow - fromRow + 1];
+    for (i = fromRow; i <= toRow; i++) {
+      ids[i - fromRow] = getSummaryIdx(i);
+    }
+    cache.prefetch(ids);
+  }
+
+  /**
+   * Returns the number of row data requests served from the internal cache.
+   */
+  public long getRowCacheHits() {
+    return _rowCache != null ? _rowCache.getHits() : 0;
+  }
+
+  /**
+   * Returns the number of row data requests that required to access the QueryBase.
+   */
+  public long getRowCacheMisses() {
+    return _rowCache != null ? _rowCache.getMisses() : 0;
+  }
+
+  private void resetRowCache() {
+    if (_rowCache != null) {
+      _rowCache.clear();
+      _rowCache = null;
+    }
+    _prefetchFrom = _prefetchTo = -1;
+  }
+
+  /**
+   * Discards cached data of rows reported as updated. Rows inserted or deleted
+   * do not require it, since cached data are identified by SJFileSummary index.
+   */
+  private void invalidateCachedRows(TableModelEvent e) {
+    int row, last, idx;
+
+    _prefetchFrom = _prefetchTo = -1;
+    if (e.getType() != TableModelEvent.UPDATE) {
+      return;
+    }
+    if (e.getFirstRow() == TableModelEvent.HEADER_ROW || e.getLastRow() == Integer.MAX_VALUE) {
+      if (_rowCache != null) {
+        _rowCache.clear();
+      }
+      _hitTermsCache.clear();
+      _queryTermsCache.clear();
+      return;
+    }
+    last = Math.min(e.getLastRow(), getRowCount() - 1);
+    for (row = Math.max(0, e.getFirstRow()); row <= last; row++) {
+      idx = getSummaryIdx(row);
+      if (_rowCache != null) {
+        _rowCache.invalidate(idx);
+      }
+      _hitTermsCache.remove(idx);
+      _queryTermsCache.remove(idx);
+    }
+  }
+
+  @Override
+  public void fireTableChanged(TableModelEvent e) {
+    invalidateCachedRows(e);
+    super.fireTableChanged(e);
+  }
+
   /**
    * Return the data associated to each table cell.
    * 
@@ -708,8 +1046,8 @@ public class SummaryTableModel extends JKTableModel {
   private Object getValueAtEx(int row, int col) {
     Object val = null;
     SJFileSummary summary;
+    SummaryRowCache.SummaryRow cachedRow;
     String status;
-    Entity entity;
     int colID, rowID;
 
     if (_query == null)
@@ -720,25 +1058,16 @@ public class SummaryTableModel extends JKTableModel {
     if (col == QUERY_DATA_COL) {
       return _query;
     }
-    if (_viewTypeDataBinner != null) {
-      rowID = _viewTypeDataBinner.get(row);
-    } else {
-      if (_sortedSummaries != null) {
-        entity = _sortedSummaries.getEntity(row, this.isSortColumnAscending());
-        rowID = entity.getId();
-      } else {
-        if (this.isSortColumnAscending())
-          rowID = row;
-        else
-          rowID = getRowCount() - 1 - row;
-      }
-    }
+    rowID = getSummaryIdx(row);
     if (col == SEQUENCE_DATA_COL) {
       return _query.getSequence(rowID);
+    } else if (col == RESULT_DATA_COL) {
+      return _query.getResult(rowID);
     }
 
-    summary = _query.getSummary(rowID);
-    status = _query.getStatus(rowID);
+    cachedRow = getCachedRow(row, rowID);
+    summary = cachedRow.getSummary();
+    status = cachedRow.getStatus();
     // check to return special data
     if (col == SUMMARY_DATA_COL) {// summary itself
       if (summary != null)
@@ -759,8 +1088,6 @@ public class SummaryTableModel extends JKTableModel {
       } else {
         return Boolean.FALSE;
       }
-    } else if (col == RESULT_DATA_COL) {
-      return _query.getResult(rowID);
     }
     colID = this.getColumnId(col);
     // return column specific data
@@ -800,7 +1127,6 @@ public class SummaryTableModel extends JKTableModel {
     _viewType = vType;
 
     prepareViewerTypeData();
-    _indexConvertor = null;
     this.fireTableDataChanged();
   }
 
@@ -815,19 +1141,200 @@ public class SummaryTableModel extends JKTableModel {
       }
     }
     _queryStatus = _query.getStatus();
+    BitSet completed;
     try {
       hasHits = new boolean[_query.sequences()];
       int size = _query.sequences();
       for (int i = 0; i < size; i++) {
         hasHits[i] = _query.hasHits(i);
       }
+      // status of queries is only checked when the job is running: see
+      // updateRunningQueries()
+      completed = new BitSet(size);
+      if (!isRunning(_queryStatus)) {
+        completed.set(0, size);
+      }
     } catch (Exception ex) {
       throw new RuntimeException(ex.toString());
     }
     _hasHits = hasHits;
+    _completed = completed;
     return _hasHits;
   }
 
+  /**
+   * Figures out whether or not a job status means that the job is running.
+   */
+  private boolean isRunning(int jobStatus) {
+    return jobStatus == QueryBase.WAITING || jobStatus == QueryBase.RUNNING;
+  }
+
+  /**
+   * Starts the periodic incremental update of this model. See
+   * updateRunningQueries().
+   */
+  private void startRunningJobRefresh() {
+    if (_runningJobTimer == null) {
+      _runningJobTimer = new Timer(RUNNING_JOB_REFRESH_DELAY, new ActionListener() {
+        public void actionPerformed(ActionEvent e) {
+          updateRunningQueries();
+        }
+      });
+    }
+    _runningJobTimer.start();
+  }
+
+  /**
+   * Stops the periodic incremental update of this model.
+   */
+  private void stopRunningJobRefresh() {
+    if (_runningJobTimer != null) {
+      _runningJobTimer.stop();
+    }
+  }
+
+  /**
+   * Incremental update of this model while a job is still running. Only the queries
+   * that were not completed during the previous call are checked: newly completed
+   * ones are added to the view (or removed from it when view type is NO_HITS_ONLY and
+   * they have hits) and the table is notified using row-based events instead of a full
+   * data change. When data are sorted, the view is rebuilt since sort keys of newly
+   * completed queries are not part of the current sort.
+   * 
+   * This method is called periodically by this model as long as the job is running.
+   * It can also be called by the application when it is notified of new results. It
+   * has to be called from the EDT.
+   * 
+   * @return the number of newly completed queries
+   */
+  public int updateRunningQueries() {
+    BitSet completed;
+    int[] newlyCompleted;
+    int i, n, size, jobStatus;
+
+    if (_query == null) {
+      stopRunningJobRefresh();
+      return 0;
+    }
+    jobStatus = _query.getStatus();
+    if (!isRunning(jobStatus)) {
+      stopRunningJobRefresh();
+    }
+    if (_hasHits == null || _completed == null) {
+      prepareViewerTypeData();
+      this.fireTableDataChanged();
+      return 0;
+    }
+    completed = _completed;
+    size = _hasHits.length;
+    newlyCompleted = new int[size - completed.cardinality()];
+    n = 0;
+    for (i = completed.nextClearBit(0); i < size; i = completed.nextClearBit(i + 1)) {
+      if (SummaryRowCache.isFinalStatus(_query.getStatus(i))) {
+        _hasHits[i] = _query.hasHits(i);
+        completed.set(i);
+        newlyCompleted[n++] = i;
+      }
+    }
+    // hit flags are now up to date with the job status: avoid a full rescan
+    // in queryHasHits()
+    _queryStatus = jobStatus;
+    if (n == 0) {
+      return 0;
+    }
+    if (_sortedSummaries != null || _viewTypeDataBinner == null) {
+      prepareViewerTypeData();
+      this.fireTableDataChanged();
+    } else if (_viewType.equals(VIEW_TYPE.ALL)) {
+      // set of rows is unchanged and rows are in query order: only repaint the
+      // range of newly completed ones
+      this.fireTableRowsUpdated(newlyCompleted[0], newlyCompleted[n - 1]);
+    } else {
+      mergeCompletedQueries(newlyCompleted, n);
+    }
+    return n;
+  }
+
+  /**
+   * Updates the view with newly completed queries. This method only works with
+   * natural ordering of queries, i.e. when _viewTypeDataBinner is sorted by
+   * ascending query index.
+   */
+  private void mergeCompletedQueries(int[] newlyCompleted, int n) {
+    int[] binner, newBinner;
+    BitSet changed;
+    int i, j, k, idx;
+
+    changed = new BitSet();
+    for (i = 0; i < n; i++) {
+      changed.set(newlyCompleted[i]);
+    }
+    // step 1: remove queries that are no longer visible
+    binner = _viewTypeDataBinner;
+    newBinner = new int[binner.length];
+    k = 0;
+    for (i = 0; i < binner.length; i++) {
+      idx = binner[i];
+      if (!changed.get(idx) || isVisible(_hasHits[idx])) {
+        newBinner[k++] = idx;
+      }
+    }
+    if (k != binner.length) {
+      _viewTypeDataBinner = Arrays.copyOf(newBinner, k);
+      _indexConvertor = null;
+      _rows = -1;
+      // from last to first row, so that row indexes stay valid
+      for (i = binner.length - 1; i >= 0; i--) {
+        idx = binner[i];
+        if (changed.get(idx) && !isVisible(_hasHits[idx])) {
+          this.fireTableRowsDeleted(i, i);
+        }
+      }
+    }
+    // step 2: add queries that are now visible
+    binner = _viewTypeDataBinner;
+    k = 0;
+    for (i = 0; i < n; i++) {
+      idx = newlyCompleted[i];
+      if (isVisible(_hasHits[idx]) && Arrays.binarySearch(binner, idx) < 0) {
+        newlyCompleted[k++] = idx;
+      } else {
+        changed.clear(idx);
+      }
+    }
+    if (k == 0) {
+      return;
+    }
+    newBinner = new int[binner.length + k];
+    i = j = 0;
+    while (i < binner.length || j < k) {
+      if (j == k || (i < binner.length && binner[i] < newlyCompleted[j])) {
+        newBinner[i + j] = binner[i];
+        i++;
+      } else {
+        newBinner[i + j] = newlyCompleted[j];
+        j++;
+      }
+    }
+    _viewTypeDataBinner = newBinner;
+    _indexConvertor = null;
+    _rows = -1;
+    // from first to last row, so that row indexes stay valid
+    i = 0;
+    while (i < newBinner.length) {
+      if (changed.get(newBinner[i])) {
+        j = i;
+        while (j + 1 < newBinner.length && changed.get(newBinner[j + 1])) {
+          j++;
+        }
+        this.fireTableRowsInserted(i, j);
+        i = j + 1;
+      } else {
+        i++;
+      }
+    }
+  }
+
   /**
    * Utility aims at creating the data structure used to prepare the view type.
    * Indeed the ResultTableViewer can display all queries, all queries having hits
@@ -835,14 +1342,12 @@ public class SummaryTableModel extends JKTableModel {
    */
   private void prepareViewerTypeData() {
     boolean[] hasHits;
-    boolean hashit, hasnohit, allhit;
-    int i, size, idx;
+    int[] binner;
+    int i, size, idx, n;
 
-    if (_viewTypeDataBinner != null) {
-      _viewTypeDataBinner.clear();
-      _viewTypeDataBinner = null;
-      _rows = -1;
-    }
+    _viewTypeDataBinner = null;
+    _indexConvertor = null;
+    _rows = -1;
     if (_query == null) {
       return;
     }
@@ -854,26 +1359,51 @@ public class SummaryTableModel extends JKTableModel {
       return;
     }
 
-    _viewTypeDataBinner = new ArrayList<Integer>();
-
-    hashit = _viewType.equals(VIEW_TYPE.HITS_ONLY);
-    hasnohit = _viewType.equals(VIEW_TYPE.NO_HITS_ONLY);
-    allhit = _viewType.equals(VIEW_TYPE.ALL);
     if (_sortedSummaries != null) {// sorted data: use it to prepare view
       size = _sortedSummaries.size();
-      for (i = 0; i < size; i++) {
-        idx = _sortedSummaries.getEntity(i, this.isSortColumnAscending()).getId();
-        if ((hasHits[idx] && hashit) || (!hasHits[idx] && hasnohit) || allhit) {
-          _viewTypeDataBinner.add(idx);
-        }
-      }
     } else {// nothing is sorted
-      for (i = 0; i < hasHits.length; i++) {
-        if ((hasHits[i] && hashit) || (!hasHits[i] && hasnohit) || allhit) {
-          _viewTypeDataBinner.add(i);
-        }
+      size = hasHits.length;
+    }
+    binner = new int[countVisibleRows(hasHits)];
+    n = 0;
+    for (i = 0; i < size; i++) {
+      if (_sortedSummaries != null) {
+        idx = _sortedSummaries.getId(i, this.isSortColumnAscending());
+      } else {
+        idx = i;
+      }
+      if (isVisible(hasHits[idx]) && n < binner.length) {
+        binner[n++] = idx;
+      }
+    }
+    _viewTypeDataBinner = binner;
+  }
+
+  /**
+   * Figures out whether or not a query has to be displayed given the current view type.
+   */
+  private boolean isVisible(boolean hasHits) {
+    switch (_viewType) {
+    case HITS_ONLY:
+      return hasHits;
+    case NO_HITS_ONLY:
+      return !hasHits;
+    default:
+      return true;
+    }
+  }
+
+  /**
+   * Returns the number of queries to display given the current view type.
+   */
+  private int countVisibleRows(boolean[] hasHits) {
+    int i, n = 0;
+    for (i = 0; i < hasHits.length; i++) {
+      if (isVisible(hasHits[i])) {
+        n++;
       }
     }
+    return n;
   }
 
   @Override
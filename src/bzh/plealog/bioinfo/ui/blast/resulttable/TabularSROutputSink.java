@@ -0,0 +1,97 @@
+/* Copyright (C) 2003-2019 Patrick G. Durand
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *     https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ */
+package bzh.plealog.bioinfo.ui.blast.resulttable;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import bzh.plealog.bioinfo.api.data.searchresult.SRClassification;
+import bzh.plealog.bioinfo.api.data.searchresult.SRHit;
+import bzh.plealog.bioinfo.api.data.searchresult.SRHsp;
+import bzh.plealog.bioinfo.api.data.searchresult.SRIteration;
+import bzh.plealog.bioinfo.api.data.searchresult.SROutput;
+import bzh.plealog.bioinfo.io.searchresult.txt.TxtExportSROutput;
+
+/**
+ * A SROutputSink writing a tab-delimited file: one line per HSP, first column
+ * being the query ID. Data columns are the ones defined in TxtExportSROutput.
+ * 
+ * @author Patrick G. Durand
+ */
+public class TabularSROutputSink implements SROutputSink {
+  private Writer _writer;
+  private int[] _columns;
+
+  /**
+   * Constructor.
+   * 
+   * @param writer where to write data. It is not closed by this sink.
+   */
+  public TabularSROutputSink(Writer writer) {
+    this(writer, TxtExportSROutput.getDefaultColumnIDs());
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param writer where to write data. It is not closed by this sink.
+   * @param columns data columns to write. Values are constants from TxtExportSROutput.
+   */
+  public TabularSROutputSink(Writer writer, int[] columns) {
+    _writer = writer;
+    _columns = columns;
+  }
+
+  @Override
+  public void begin(SROutput header) throws IOException {
+    _writer.write("Query");
+    for (int col : _columns) {
+      _writer.write('\t');
+      _writer.write(TxtExportSROutput.DATA_COL_HEADERS[col]);
+    }
+    _writer.write('\n');
+  }
+
+  @Override
+  public void addIteration(SROutput sro, SRIteration iteration) throws IOException {
+    SRHit hit;
+    SRHsp hsp;
+    String queryId, value;
+    int i, j;
+
+    queryId = iteration.getIterationQueryID();
+
+    for (i = 0; i < iteration.countHit(); i++) {
+      hit = iteration.getHit(i);
+      for (j = 0; j < hit.countHsp(); j++) {
+        hsp = hit.getHsp(j);
+        _writer.write(queryId != null ? queryId : "-");
+        for (int col : _columns) {
+          _writer.write('\t');
+          value = TxtExportSROutput.getFormattedData(hit, hsp, col);
+          _writer.write(value != null ? value : "-");
+        }
+        _writer.write('\n');
+      }
+    }
+  }
+
+  @Override
+  public void end(SRClassification classification) throws IOException {
+    _writer.flush();
+  }
+}
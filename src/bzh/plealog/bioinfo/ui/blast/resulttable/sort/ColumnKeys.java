@@ -0,0 +1,306 @@
+/* Copyright (C) 2003-2019 Patrick G. Durand
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *     https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ */
+package bzh.plealog.bioinfo.ui.blast.resulttable.sort;
+
+import java.util.Arrays;
+
+/**
+ * Utility class for the ResultTableModelSorter framework. It stores the values
+ * of a single column using a primitive array, so that sorting a huge table does
+ * not require the creation of one object per row. Double and String values are
+ * rank-encoded (dictionary-encoded for Strings) into int keys, then all columns
+ * are sorted the same way: as an array of int keys producing a permutation of
+ * row indexes.
+ */
+public class ColumnKeys {
+
+  private int[]    iValues;
+  private double[] dValues;
+  private String[] sValues;
+  private int      size;
+
+  private ColumnKeys(int size) {
+    this.size = size;
+  }
+
+  /**
+   * Creates a column designed to store integer values.
+   */
+  public static ColumnKeys forIntegers(int size) {
+    ColumnKeys keys = new ColumnKeys(size);
+    keys.iValues = new int[size];
+    return keys;
+  }
+
+  /**
+   * Creates a column designed to store double values.
+   */
+  public static ColumnKeys forDoubles(int size) {
+    ColumnKeys keys = new ColumnKeys(size);
+    keys.dValues = new double[size];
+    return keys;
+  }
+
+  /**
+   * Creates a column designed to store string values.
+   */
+  public static ColumnKeys forStrings(int size) {
+    ColumnKeys keys = new ColumnKeys(size);
+    keys.sValues = new String[size];
+    return keys;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public void setInteger(int idx, int value) {
+    iValues[idx] = value;
+  }
+
+  public void setDouble(int idx, double value) {
+    dValues[idx] = value;
+  }
+
+  public void setString(int idx, String value) {
+    sValues[idx] = (value != null ? value : "");
+  }
+
+  /**
+   * Returns the int keys of this column. Sorting these keys in ascending order
+   * gives the same ordering than sorting the original values.
+   */
+  public int[] getKeys() {
+    if (iValues != null) {
+      return iValues;
+    } else if (dValues != null) {
+      return rankDoubles(dValues);
+    } else {
+      return rankStrings(sValues);
+    }
+  }
+
+  /**
+   * Returns the dense ranks of the values of this column, i.e. each value is
+   * replaced by its rank among the distinct values, from 0 to cardinality-1.
+   */
+  public int[] getRanks() {
+    if (iValues != null) {
+      return rankIntegers(iValues);
+    } else if (dValues != null) {
+      return rankDoubles(dValues);
+    } else {
+      return rankStrings(sValues);
+    }
+  }
+
+  /**
+   * Replaces each value by its rank among the distinct values.
+   */
+  private static int[] rankIntegers(int[] values) {
+    int[] dict, keys;
+    int i, n;
+
+    dict = values.clone();
+    Arrays.sort(dict);
+    n = 0;
+    for (i = 0; i < dict.length; i++) {
+      if (n == 0 || dict[n - 1] != dict[i]) {
+        dict[n++] = dict[i];
+      }
+    }
+    keys = new int[values.length];
+    for (i = 0; i < values.length; i++) {
+      keys[i] = Arrays.binarySearch(dict, 0, n, values[i]);
+    }
+    return keys;
+  }
+
+  /**
+   * Replaces each value by its rank among the distinct values.
+   */
+  private static int[] rankLongs(long[] values) {
+    long[] dict;
+    int[] keys;
+    int i, n;
+
+    dict = values.clone();
+    Arrays.sort(dict);
+    n = 0;
+    for (i = 0; i < dict.length; i++) {
+      if (n == 0 || dict[n - 1] != dict[i]) {
+        dict[n++] = dict[i];
+      }
+    }
+    keys = new int[values.length];
+    for (i = 0; i < values.length; i++) {
+      keys[i] = Arrays.binarySearch(dict, 0, n, values[i]);
+    }
+    return keys;
+  }
+
+  /**
+   * Returns the number of distinct values of a dense rank array.
+   */
+  private static int cardinality(int[] ranks) {
+    int i, max = -1;
+    for (i = 0; i < ranks.length; i++) {
+      if (ranks[i] > max) {
+        max = ranks[i];
+      }
+    }
+    return max + 1;
+  }
+
+  /**
+   * Combines the dense ranks of several columns into a single array of int keys.
+   * Sorting these keys in ascending order gives the same ordering than sorting
+   * rows using the first column, then the second column for ties, and so on.
+   *
+   * @param ranks dense ranks of each column, see getRanks()
+   * @param ascending sort direction of each column
+   *
+   * @return compound keys
+   */
+  public static int[] combine(int[][] ranks, boolean[] ascending) {
+    long[] packed;
+    int[] keys, r;
+    long card, radix;
+    int i, j, size, n;
+
+    size = ranks[0].length;
+    packed = new long[size];
+    keys = null;
+    radix = 1;
+    for (j = 0; j < ranks.length; j++) {
+      r = ranks[j];
+      n = cardinality(r);
+      card = Math.max(1, n);
+      if (radix > Long.MAX_VALUE / card) {
+        // mixed-radix key would overflow: densify what has been packed so far
+        keys = rankLongs(packed);
+        radix = cardinality(keys);
+        for (i = 0; i < size; i++) {
+          packed[i] = keys[i];
+        }
+      }
+      // single pass: append column j to the mixed-radix compound key
+      for (i = 0; i < size; i++) {
+        packed[i] = packed[i] * card + (ascending[j] ? r[i] : (n - 1 - r[i]));
+      }
+      radix *= card;
+    }
+    return rankLongs(packed);
+  }
+
+  /**
+   * Replaces each value by its rank among the distinct values.
+   */
+  private static int[] rankDoubles(double[] values) {
+    double[] dict;
+    int[] keys;
+    int i, n;
+
+    dict = values.clone();
+    Arrays.sort(dict);
+    n = 0;
+    for (i = 0; i < dict.length; i++) {
+      if (n == 0 || Double.compare(dict[n - 1], dict[i]) != 0) {
+        dict[n++] = dict[i];
+      }
+    }
+    keys = new int[values.length];
+    for (i = 0; i < values.length; i++) {
+      keys[i] = Arrays.binarySearch(dict, 0, n, values[i]);
+    }
+    return keys;
+  }
+
+  /**
+   * Replaces each value by its rank among the distinct values (i.e. dictionary
+   * encoding of the strings).
+   */
+  private static int[] rankStrings(String[] values) {
+    String[] dict;
+    int[] keys;
+    int i, n;
+
+    dict = values.clone();
+    for (i = 0; i < dict.length; i++) {
+      if (dict[i] == null) {
+        dict[i] = "";
+      }
+    }
+    Arrays.sort(dict);
+    n = 0;
+    for (i = 0; i < dict.length; i++) {
+      if (n == 0 || !dict[n - 1].equals(dict[i])) {
+        dict[n++] = dict[i];
+      }
+    }
+    keys = new int[values.length];
+    for (i = 0; i < values.length; i++) {
+      keys[i] = Arrays.binarySearch(dict, 0, n, values[i] != null ? values[i] : "");
+    }
+    return keys;
+  }
+
+  /**
+   * Sorts a set of int keys.
+   *
+   * @param keys the keys to sort. Index position of a key within this array
+   *             is the ID of the corresponding row.
+   *
+   * @return a permutation of row IDs, in ascending order of keys. Rows having
+   *         the same key stay in their natural order (stable sort).
+   */
+  public static int[] sortIndex(int[] keys) {
+    return sortIndex(keys, false);
+  }
+
+  /**
+   * Sorts a set of int keys.
+   *
+   * @param keys the keys to sort. Index position of a key within this array
+   *             is the ID of the corresponding row.
+   * @param reverseTies if true, rows having the same key are ordered by
+   *             descending row IDs. Use it when the permutation is going to be
+   *             read from the end, so that ties stay in their natural order.
+   *
+   * @return a permutation of row IDs, in ascending order of keys.
+   */
+  public static int[] sortIndex(int[] keys, boolean reverseTies) {
+    long[] packed;
+    int[] ids;
+    int i, tie;
+
+    // key is stored in the high bits, row ID in the low bits: so a single
+    // primitive sort gives the permutation, ties being ordered by row ID
+    packed = new long[keys.length];
+    for (i = 0; i < keys.length; i++) {
+      tie = reverseTies ? Integer.MAX_VALUE - i : i;
+      packed[i] = (((long) keys[i]) << 32) | (tie & 0xFFFFFFFFL);
+    }
+    Arrays.sort(packed);
+    ids = new int[keys.length];
+    for (i = 0; i < keys.length; i++) {
+      tie = (int) packed[i];
+      ids[i] = reverseTies ? Integer.MAX_VALUE - tie : tie;
+    }
+    return ids;
+  }
+}
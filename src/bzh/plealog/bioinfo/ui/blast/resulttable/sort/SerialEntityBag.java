@@ -16,27 +16,31 @@
  */
 package bzh.plealog.bioinfo.ui.blast.resulttable.sort;
 
-import java.io.Serializable;
-import java.util.List;
+import java.nio.IntBuffer;
 
 /**
- * Utility class for the ResultTableModelSorter framework.
+ * Utility class for the ResultTableModelSorter framework. IDs are either stored
+ * in memory or memory-mapped from a file (see SortIndexFile).
  */
-public class SerialEntityBag implements Serializable{
-	private static final long serialVersionUID = -6231973115632303472L;
+public class SerialEntityBag {
+
+	private boolean ascending;
+	private int     sortColumn;
+	//absolute index positions of BFileSummaries within the QueryBase Data Storage,
+	//in ascending sort order
+	private IntBuffer ids;
 
-	private boolean      ascending;
-	private int          sortColumn;
-	private List<Entity> entities;
-	
 	public SerialEntityBag(){}
-	
-	public SerialEntityBag(boolean ascending, int sortColumn,
-			List<Entity> entities) {
+
+	public SerialEntityBag(boolean ascending, int sortColumn, int[] ids) {
+		this(ascending, sortColumn, IntBuffer.wrap(ids));
+	}
+
+	public SerialEntityBag(boolean ascending, int sortColumn, IntBuffer ids) {
 		super();
 		this.ascending = ascending;
 		this.sortColumn = sortColumn;
-		this.entities = entities;
+		this.ids = ids;
 	}
 
 	public boolean isAscending() {
@@ -55,24 +59,29 @@ public class SerialEntityBag implements Serializable{
 		this.sortColumn = sortColumn;
 	}
 
-	public List<Entity> getEntities() {
-		return entities;
+	public IntBuffer getIds() {
+		return ids;
 	}
 
-	public void setEntities(List<Entity> entities) {
-		this.entities = entities;
+	public void setIds(IntBuffer ids) {
+		this.ids = ids;
 	}
-	
+
 	public int size(){
-		return entities.size();
+		return ids.limit();
 	}
-	public Entity getEntity(int idx, boolean ascending){
+
+	/**
+	 * Returns the absolute index position of a BFileSummary within the QueryBase Data Storage
+	 * given its position within the sorted list.
+	 */
+	public int getId(int idx, boolean ascending){
 		if (ascending){
-			return entities.get(idx);
+			return ids.get(idx);
 		}
 		else{
-			return entities.get(entities.size()-1-idx);
+			return ids.get(ids.limit()-1-idx);
 		}
 	}
-	
+
 }
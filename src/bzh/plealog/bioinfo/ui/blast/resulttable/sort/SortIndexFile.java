@@ -0,0 +1,242 @@
+/* Copyright (C) 2003-2019 Patrick G. Durand
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *     https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ */
+package bzh.plealog.bioinfo.ui.blast.resulttable.sort;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Utility class for the ResultTableModelSorter framework. It handles the
+ * binary file used to save a sorted list of IDs. That file is made of a fixed
+ * size header followed by the raw permutation of IDs (int values). When
+ * reloaded, only the header and the file length are checked and the
+ * permutation is memory-mapped, so that opening a sorted column does not
+ * depend on the number of rows: data are paged in on demand.
+ * <br><br>
+ * Header contains: magic number, format version, sort column, number of IDs,
+ * data signature (e.g. hash of the QueryBase RID) and a checksum of the
+ * permutation. Any mismatch with the current data model makes the file stale;
+ * a truncated file makes it invalid. Since checking the permutation against
+ * its checksum reads the whole file, it is only done by verify().
+ */
+public class SortIndexFile {
+
+  private static final int MAGIC       = 0x4B534F52; //"KSOR"
+  private static final int VERSION     = 2;
+  private static final int HEADER_SIZE = 6 * 4;
+  private static final int CHUNK_SIZE  = 16384;
+  // out of the range of int checksums
+  private static final long INVALID_HEADER = Long.MIN_VALUE;
+
+  private SortIndexFile() {
+  }
+
+  /**
+   * Computes the data signature from a data identifier.
+   */
+  private static int getSignature(String dataId) {
+    return dataId != null ? dataId.hashCode() : 0;
+  }
+
+  /**
+   * Saves a sorted list of IDs.
+   *
+   * @param f the file to write
+   * @param sortColumn the column used to sort data
+   * @param dataId the identifier of the sorted data model. Can be null.
+   * @param ids the sorted list of IDs
+   *
+   * @throws IOException if file cannot be written
+   */
+  public static void write(File f, int sortColumn, String dataId, int[] ids) throws IOException {
+    FileOutputStream fos = null;
+    FileChannel channel;
+    ByteBuffer buf;
+    CRC32 crc;
+    int i, n, signature;
+
+    signature = getSignature(dataId);
+    buf = ByteBuffer.allocate(Math.max(HEADER_SIZE, CHUNK_SIZE * 4));
+    crc = new CRC32();
+    try {
+      fos = new FileOutputStream(f);
+      channel = fos.getChannel();
+      // header is written last, once the checksum of the permutation is known
+      channel.position(HEADER_SIZE);
+      for (i = 0; i < ids.length; i += CHUNK_SIZE) {
+        n = Math.min(CHUNK_SIZE, ids.length - i);
+        buf.clear();
+        buf.asIntBuffer().put(ids, i, n);
+        buf.limit(n * 4);
+        crc.update(buf.array(), 0, n * 4);
+        while (buf.hasRemaining()) {
+          channel.write(buf);
+        }
+      }
+      buf.clear();
+      buf.putInt(MAGIC).putInt(VERSION).putInt(sortColumn).putInt(ids.length).putInt(signature)
+          .putInt((int) crc.getValue());
+      buf.flip();
+      channel.position(0);
+      while (buf.hasRemaining()) {
+        channel.write(buf);
+      }
+      fos.flush();
+    } finally {
+      IOUtils.closeQuietly(fos);
+    }
+  }
+
+  /**
+   * Reloads a sorted list of IDs.
+   *
+   * @param f the file to read
+   * @param sortColumn the column used to sort data
+   * @param dataId the identifier of the sorted data model. Can be null.
+   * @param size expected number of IDs
+   *
+   * @return the sorted list of IDs or null if file is missing, invalid or stale.
+   *
+   * @throws IOException if file cannot be read
+   */
+  public static SerialEntityBag read(File f, int sortColumn, String dataId, int size) throws IOException {
+    FileInputStream fis = null;
+    FileChannel channel;
+    IntBuffer ids;
+
+    if (!f.exists()) {
+      return null;
+    }
+    try {
+      fis = new FileInputStream(f);
+      channel = fis.getChannel();
+      if (readHeader(channel, sortColumn, dataId, size) == INVALID_HEADER) {
+        return null;
+      }
+      ids = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, size * 4L).asIntBuffer();
+    } finally {
+      IOUtils.closeQuietly(fis);
+    }
+    return new SerialEntityBag(true, sortColumn, ids);
+  }
+
+  /**
+   * Figures out whether or not a file contains a valid sorted list of IDs. This
+   * is a quick check of the file header and length: the permutation itself is
+   * checked by verify().
+   *
+   * @param f the file to check
+   * @param sortColumn the column used to sort data
+   * @param dataId the identifier of the sorted data model. Can be null.
+   * @param size expected number of IDs
+   */
+  public static boolean isValid(File f, int sortColumn, String dataId, int size) {
+    FileInputStream fis = null;
+
+    if (!f.exists()) {
+      return false;
+    }
+    try {
+      fis = new FileInputStream(f);
+      return readHeader(fis.getChannel(), sortColumn, dataId, size) != INVALID_HEADER;
+    } catch (IOException e) {
+      return false;
+    } finally {
+      IOUtils.closeQuietly(fis);
+    }
+  }
+
+  /**
+   * Checks a file containing a sorted list of IDs: header, length and checksum
+   * of the permutation. Contrary to isValid(), this method reads the whole file,
+   * so it should not be called when opening a sorted column.
+   *
+   * @param f the file to check
+   * @param sortColumn the column used to sort data
+   * @param dataId the identifier of the sorted data model. Can be null.
+   * @param size expected number of IDs
+   *
+   * @return false if file is missing, invalid, stale or corrupted.
+   */
+  public static boolean verify(File f, int sortColumn, String dataId, int size) {
+    FileInputStream fis = null;
+    FileChannel channel;
+    ByteBuffer buf;
+    CRC32 crc;
+    long checksum;
+
+    if (!f.exists()) {
+      return false;
+    }
+    try {
+      fis = new FileInputStream(f);
+      channel = fis.getChannel();
+      checksum = readHeader(channel, sortColumn, dataId, size);
+      if (checksum == INVALID_HEADER) {
+        return false;
+      }
+      buf = ByteBuffer.allocate(CHUNK_SIZE * 4);
+      crc = new CRC32();
+      while (channel.read(buf) != -1) {
+        buf.flip();
+        crc.update(buf.array(), 0, buf.limit());
+        buf.clear();
+      }
+      return (int) crc.getValue() == checksum;
+    } catch (IOException e) {
+      return false;
+    } finally {
+      IOUtils.closeQuietly(fis);
+    }
+  }
+
+  /**
+   * Checks the header of a file against the current data model.
+   *
+   * @return the checksum of the permutation or INVALID_HEADER
+   */
+  private static long readHeader(FileChannel channel, int sortColumn, String dataId, int size) throws IOException {
+    ByteBuffer buf;
+
+    if (channel.size() != HEADER_SIZE + size * 4L) {
+      return INVALID_HEADER;
+    }
+    buf = ByteBuffer.allocate(HEADER_SIZE);
+    while (buf.hasRemaining()) {
+      if (channel.read(buf) == -1) {
+        return INVALID_HEADER;
+      }
+    }
+    buf.flip();
+    if (buf.getInt() == MAGIC
+        && buf.getInt() == VERSION
+        && buf.getInt() == sortColumn
+        && buf.getInt() == size
+        && buf.getInt() == getSignature(dataId)) {
+      return buf.getInt();
+    }
+    return INVALID_HEADER;
+  }
+}
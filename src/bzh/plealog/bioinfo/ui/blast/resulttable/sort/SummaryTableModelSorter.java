@@ -16,9 +16,9 @@
  */
 package bzh.plealog.bioinfo.ui.blast.resulttable.sort;
 
-import java.util.ArrayList;
 import java.util.Enumeration;
-import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import bzh.plealog.bioinfo.api.data.searchjob.QueryBase;
 import bzh.plealog.bioinfo.api.data.searchjob.SJFileSummary;
@@ -37,6 +37,9 @@ public class SummaryTableModelSorter extends JKTableModelSorter<SJFileSummary> {
 
   public static final String SORT_FILE_PREFIX = "sort_";
 
+  // minimum number of queries processed by a single extraction task
+  private static final int MIN_CHUNK_SIZE = 1000;
+
   /**
    * Default Constructor. The sort system is associated to a BlastQuery.
    */
@@ -53,82 +56,222 @@ public class SummaryTableModelSorter extends JKTableModelSorter<SJFileSummary> {
     return (super.canSave() && (_query.countStatuses((byte) QueryBase.OK) == _query.sequences()));
   }
 
+  @Override
+  protected String getDataIdentifier() {
+    // sort files are stored within the query directory: RID is enough to detect
+    // a file coming from another job
+    return _query.getRID();
+  }
+
   /**
-   * 
+   * Extracts the values of a column within a primitive-based storage. When the
+   * QueryBase supports concurrent access (see
+   * QueryBaseUI.isConcurrentAccessSupported()), queries are partitioned across a
+   * fork-join pool so that huge jobs are processed using all available
+   * processors. Otherwise, values are extracted by the calling thread.
    */
-  protected List<Entity> getEntities(ProgressTinyDialog monitor, int sortColumn) {
-    List<Entity> entities;
-    SJFileSummary summary;
+  protected ColumnKeys getColumnKeys(ProgressTinyDialog monitor, int sortColumn) {
+    ColumnExtractor task;
+    ColumnKeys keys;
     ENTITY_TYPE eType;
-    int i, size, delta = 100;
+    int size, threshold;
+    boolean completed;
 
-    // if not, start ordering SRFileSummary as needed
-    entities = new ArrayList<Entity>();
     size = _query.sequences();
     eType = getEntityType(sortColumn);
+    keys = createColumnKeys(eType, size);
     // get data
     if (monitor != null) {
       monitor.setMessage("Preparing data...");
       monitor.setMaxSteps(size);
     }
+    if (_query.isConcurrentAccessSupported() && size > MIN_CHUNK_SIZE) {
+      threshold = Math.max(MIN_CHUNK_SIZE, size / (ForkJoinPool.getCommonPoolParallelism() * 8));
+      task = new ColumnExtractor(new ExtractionContext(monitor, keys, eType, sortColumn, threshold), 0, size);
+      ForkJoinPool.commonPool().invoke(task);
+      completed = !task.ctx.cancelled;
+    } else {
+      completed = extractSequentially(monitor, keys, eType, sortColumn, size);
+    }
+    if (!completed || (monitor != null && monitor.stopProcessing())) {
+      monitor.dispose();
+      return null;
+    }
+    return keys;
+  }
 
-    if (sortColumn == SummaryTableModel.RES_FILE_NUM_HEADER) {
-      for (i = 0; i < size; i++) {
-        entities.add(new IntegerEntity(i, i));
-        if (monitor != null) {
-          if ((i % delta) == 0)
-            monitor.addToProgress(delta);
-          if (monitor.stopProcessing()) {
-            entities.clear();
-            monitor.dispose();
-            return null;
-          }
-        }
-      }
-    } else if (sortColumn == SummaryTableModel.RES_STATUS_HEADER) {
-      for (i = 0; i < size; i++) {
-        entities.add(new StringEntity(i, _query.getStatus(i)));
-        if (monitor != null) {
-          if ((i % delta) == 0)
-            monitor.addToProgress(delta);
-          if (monitor.stopProcessing()) {
-            entities.clear();
-            monitor.dispose();
-            return null;
+  /**
+   * Extracts the values of a column using the calling thread only.
+   * 
+   * @return false if the process was interrupted by the user
+   */
+  private boolean extractSequentially(ProgressTinyDialog monitor, ColumnKeys keys, ENTITY_TYPE eType,
+      int sortColumn, int size) {
+    Enumeration<SJFileSummary> summaries = null;
+    SJFileSummary summary;
+    int i, delta = 100;
+
+    if (sortColumn != SummaryTableModel.RES_FILE_NUM_HEADER && sortColumn != SummaryTableModel.RES_STATUS_HEADER) {
+      summaries = _query.getSummaries();
+    }
+    for (i = 0; i < size; i++) {
+      if (sortColumn == SummaryTableModel.RES_FILE_NUM_HEADER) {
+        keys.setInteger(i, i);
+      } else if (sortColumn == SummaryTableModel.RES_STATUS_HEADER) {
+        keys.setString(i, _query.getStatus(i));
+      } else {
+        summary = null;
+        if (summaries.hasMoreElements()) {
+          try {
+            summary = summaries.nextElement();
+          } catch (Exception e) {
+            // exception not bad here, so hide it
           }
         }
-      }
-    } else {
-      Enumeration<SJFileSummary> summaries = _query.getSummaries();
-      int index = 0;
-      while (summaries.hasMoreElements()) {
-        try {
-          summary = summaries.nextElement();
-        } catch (Exception e) {
-          // exception not bad here, so hide it
-          summary = _query.getSummary(index);
-        }
         // if null => get a light summary constructed with few data from sequence
         if (summary == null) {
-          summary = _query.getSummary(index);
+          summary = _query.getSummary(i);
         }
-        entities.add(getEntity(summary, eType, index, sortColumn));
+        setKey(keys, summary, eType, i, sortColumn);
+      }
+      if (monitor != null) {
+        if ((i % delta) == 0)
+          monitor.addToProgress(delta);
+        if (monitor.stopProcessing()) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
 
-        if (monitor != null) {
-          if ((index % delta) == 0)
-            monitor.addToProgress(delta);
-          if (monitor.stopProcessing()) {
-            entities.clear();
-            monitor.dispose();
-            return null;
+  /**
+   * Data shared by all tasks of a single column extraction.
+   */
+  private static class ExtractionContext {
+    private ProgressTinyDialog monitor;
+    private ColumnKeys keys;
+    private ENTITY_TYPE eType;
+    private int sortColumn;
+    private int threshold;
+    private volatile boolean cancelled;
+
+    public ExtractionContext(ProgressTinyDialog monitor, ColumnKeys keys, ENTITY_TYPE eType, int sortColumn,
+        int threshold) {
+      this.monitor = monitor;
+      this.keys = keys;
+      this.eType = eType;
+      this.sortColumn = sortColumn;
+      this.threshold = threshold;
+    }
+  }
+
+  /**
+   * Fork-join task extracting the values of a range of queries.
+   */
+  @SuppressWarnings("serial")
+  private class ColumnExtractor extends RecursiveAction {
+    private ExtractionContext ctx;
+    private int from, to;
+
+    public ColumnExtractor(ExtractionContext ctx, int from, int to) {
+      this.ctx = ctx;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      int mid;
+
+      if (ctx.cancelled) {
+        return;
+      }
+      if (to - from > ctx.threshold) {
+        mid = (from + to) >>> 1;
+        invokeAll(new ColumnExtractor(ctx, from, mid), new ColumnExtractor(ctx, mid, to));
+      } else {
+        extract();
+      }
+    }
+
+    private void extract() {
+      SJFileSummary summary;
+      int i, done = 0, delta = 100;
+
+      for (i = from; i < to; i++) {
+        if (ctx.sortColumn == SummaryTableModel.RES_FILE_NUM_HEADER) {
+          ctx.keys.setInteger(i, i);
+        } else if (ctx.sortColumn == SummaryTableModel.RES_STATUS_HEADER) {
+          ctx.keys.setString(i, _query.getStatus(i));
+        } else {
+          // random access instead of getSummaries(): enumeration cannot be shared across
+          // tasks. Only used when QueryBase supports concurrent access.
+          summary = _query.getSummary(i);
+          setKey(ctx.keys, summary, ctx.eType, i, ctx.sortColumn);
+        }
+        done++;
+        if (ctx.monitor != null && (done == delta || i == to - 1)) {
+          synchronized (ctx.monitor) {
+            ctx.monitor.addToProgress(done);
+          }
+          done = 0;
+          if (ctx.monitor.stopProcessing()) {
+            ctx.cancelled = true;
           }
         }
-
-        index++;
+        if (ctx.cancelled) {
+          return;
+        }
       }
     }
+  }
+
+  @Override
+  protected int getIntegerValue(SJFileSummary summary, int sortColumn) {
+    // avoid string round-tripping when SJFileSummary provides a typed value
+    if (summary != null && sortColumn == SummaryTableModel.RES_NB_HITS) {
+      return summary.getNHits();
+    }
+    return super.getIntegerValue(summary, sortColumn);
+  }
 
-    return entities;
+  @Override
+  protected double getDoubleValue(SJFileSummary summary, int sortColumn) {
+    String value;
+
+    if (summary == null) {
+      return super.getDoubleValue(summary, sortColumn);
+    }
+    // percentages are parsed from raw values: parseDecimal() handles the
+    // ending % and avoids removePct() intermediate strings
+    switch (sortColumn) {
+    case SummaryTableModel.RES_IDENTITY:
+      value = summary.getBestHitIdentify();
+      break;
+    case SummaryTableModel.RES_SIMILARITY:
+      value = summary.getBestHitSimilarity();
+      break;
+    case SummaryTableModel.RES_COVERAGE:
+      value = summary.getBestHitCoverage();
+      break;
+    case SummaryTableModel.RES_COVERAGE_H:
+      value = summary.getBestHitCoverageH();
+      break;
+    case SummaryTableModel.RES_P_GAPS:
+      value = summary.getPercentGaps();
+      break;
+    default:
+      return super.getDoubleValue(summary, sortColumn);
+    }
+    if (value == null) {
+      return -1d;
+    }
+    try {
+      return parseDecimal(value);
+    } catch (NumberFormatException ex) {
+      return -1d;
+    }
   }
 
   /**
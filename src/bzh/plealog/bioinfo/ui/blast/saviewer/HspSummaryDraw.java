@@ -151,11 +151,9 @@ public class HspSummaryDraw extends JPanel {
     _hspNum = _querySize = _regionStart = _regionExtent = -1;
   }
 
-  private Color getColor(SRHsp hsp) {
+  private Color getColor(ColorPolicyConfig nc, SRHsp hsp) {
     Color clr = Color.BLACK;
-    ColorPolicyConfig nc;
 
-    nc = (ColorPolicyConfig) ConfigManager.getConfig(ColorPolicyConfig.NAME);
     if (nc == null) {
       clr = DefaultHitColorPolicy.getColor((int) hsp.getScores().getBitScore());
     } else {
@@ -164,7 +162,7 @@ public class HspSummaryDraw extends JPanel {
     return clr;
   }
 
-  private void simplePaint(Graphics g) {
+  private void simplePaint(Graphics g, ColorPolicyConfig nc) {
     FontMetrics fm;
     SRHsp hsp;
     int yBase, xDecal, paneWidth, from, to, i, size, cy;
@@ -199,7 +197,7 @@ public class HspSummaryDraw extends JPanel {
       if (isSelected())
         clr = this.getForeground();
       else
-        clr = getColor(hsp);
+        clr = getColor(nc, hsp);
       g.setColor(clr.darker());
       g.fillRect(xDecal + (int) ((double) from * factorHit), yBase - cy,
           Math.max(2, (int) ((double) (to - from + 1) * factorHit)), cy + 1);
@@ -227,7 +225,7 @@ public class HspSummaryDraw extends JPanel {
     g.fillPolygon(_xPoints, _yPoints, 5);
   }
 
-  private void detailPaint(Graphics g) {
+  private void detailPaint(Graphics g, ColorPolicyConfig nc) {
     FontMetrics fm;
     SRHsp hsp;
     DSequence seq;
@@ -262,7 +260,7 @@ public class HspSummaryDraw extends JPanel {
       hsp = _data.getHsp(i);
       from = Math.min(hsp.getHit().getFrom() - 1, hsp.getHit().getTo() - 1);
       to = Math.max(hsp.getHit().getFrom() - 1, hsp.getHit().getTo() - 1);
-      clr = getColor(hsp).darker();
+      clr = getColor(nc, hsp).darker();
       g.setColor(clr);
       g.fillRect(xDecal + (int) ((double) from * factorHit), yBase - cy - 2,
           Math.max(1, (int) ((double) (to - from + 1) * factorHit)), cy);
@@ -359,9 +357,10 @@ public class HspSummaryDraw extends JPanel {
     if (nc != null && nc.isUsingAntialias()) {
       ((Graphics2D) g).setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
     }
+    // color policy is retrieved once per paint, not once per HSP
     if (_detailedView)
-      detailPaint(g);
+      detailPaint(g, nc);
     else
-      simplePaint(g);
+      simplePaint(g, nc);
   }
 }
\ No newline at end of file
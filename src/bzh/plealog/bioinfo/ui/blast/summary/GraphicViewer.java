@@ -19,6 +19,10 @@ package bzh.plealog.bioinfo.ui.blast.summary;
 import java.awt.BorderLayout;
 
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+
+import com.plealog.genericapp.api.EZEnvironment;
+import com.plealog.genericapp.api.log.EZLogger;
 
 import bzh.plealog.bioinfo.api.core.config.CoreSystemConfigurator;
 import bzh.plealog.bioinfo.api.data.feature.Feature;
@@ -52,8 +56,20 @@ public class GraphicViewer extends JPanel implements BlastIterationListListener
   private CombinedAnnotatedSequenceViewer _cartoViewer;
 
   public static final String              BHIT_FEATURE_TYPE    = "BLAST hit";
+  public static final String              BHIT_COVERAGE_FEATURE_TYPE = "BLAST coverage";
   public static final String              SCORE_BITS_QUALIFIER = getQualifierName(TxtExportSROutput.DATA_COL_HEADERS[TxtExportSROutput.SCORE_BITS]);
 
+  /**
+   * Maximum number of HSPs displayed as individual features. Beyond that
+   * value, HSPs are summarized as coverage features.
+   */
+  public static final int                 MAX_DETAILED_HSPS    = 2000;
+  /** maximum number of bins used to summarize HSPs */
+  private static final int                COVERAGE_BINS        = 500;
+
+  // used to discard obsolete background data preparation
+  private int                             _dataGeneration;
+
   /**
    * Constructor.
    */
@@ -70,7 +86,8 @@ public class GraphicViewer extends JPanel implements BlastIterationListListener
 
   /**
    * Analyze a SRHit and BHsp to retrieve useful data and place it as a new
-   * Feature within an FeatureTable.
+   * Feature within an FeatureTable. Qualifiers of that Feature are created
+   * when they are accessed for the first time, see LazyHitFeature.
    * 
    * @param queryId
    *          the query ID
@@ -96,9 +113,7 @@ public class GraphicViewer extends JPanel implements BlastIterationListListener
     fromHsp = Math.min(hsp.getQuery().getFrom(), hsp.getQuery().getTo());
     toHsp = Math.max(hsp.getQuery().getFrom(), hsp.getQuery().getTo());
 
-    feat = CoreSystemConfigurator.getFeatureTableFactory().getFInstance();
-
-    feat.setKey(BHIT_FEATURE_TYPE);
+    feat = new LazyHitFeature(BHIT_FEATURE_TYPE, queryId, queryNum, hit, hsp);
 
     // feat.setKey(hit.getHitAccession()+"/"+hsp.getHspNum());
 
@@ -108,6 +123,27 @@ public class GraphicViewer extends JPanel implements BlastIterationListListener
       feat.setStrand(Feature.PLUS_STRAND);
     else
       feat.setStrand(Feature.MINUS_STRAND);
+    ft.addFeature(feat);
+  }
+
+  /**
+   * Adds to a Feature the qualifiers describing a SRHit/SRHsp.
+   * 
+   * @param feat
+   *          the feature to update
+   * @param queryId
+   *          the query ID
+   * @param queryNum
+   *          the query order number
+   * @param hit
+   *          the hit to analyze
+   * @param hsp
+   *          the hsp to analyze
+   * */
+  protected static void addQualifiers(Feature feat, String queryId,
+      int queryNum, SRHit hit, SRHsp hsp) {
+    if (hit == null || hsp == null)
+      return;
 
     if (queryId != null) {
       feat.addQualifier("Query definition", queryId);
@@ -167,7 +203,69 @@ public class GraphicViewer extends JPanel implements BlastIterationListListener
     feat.addQualifier(
         getQualifierName(TxtExportSROutput.DATA_COL_HEADERS[TxtExportSROutput.GAPS]),
         TxtExportSROutput.getFormattedData(hit, hsp, TxtExportSROutput.GAPS));
-    ft.addFeature(feat);
+  }
+
+  /**
+   * Adds to a FeatureTable an overview of the HSPs of an iteration. Query is
+   * divided into bins and a feature is created for each run of consecutive
+   * bins covered by the same number of HSPs.
+   * 
+   * @param bi
+   *          the iteration to analyze
+   * @param qSize
+   *          size of the query
+   * @param ft
+   *          the FeatureTable where new Features will be added
+   * */
+  private static void prepareCoverageFeatures(SRIteration bi, int qSize,
+      FeatureTable ft) {
+    Feature feat;
+    SRHit hit;
+    SRHsp hsp;
+    int[] counts;
+    int i, j, k, size2, size3, nBins, binSize, from, to, start, cov;
+
+    if (qSize <= 0)
+      return;
+    nBins = Math.min(qSize, COVERAGE_BINS);
+    binSize = (qSize + nBins - 1) / nBins;
+    nBins = (qSize + binSize - 1) / binSize;
+    // difference array: +1 at first bin of a HSP, -1 after its last bin
+    counts = new int[nBins + 1];
+    size2 = bi.countHit();
+    for (j = 0; j < size2; j++) {
+      hit = bi.getHit(j);
+      size3 = hit.countHsp();
+      for (k = 0; k < size3; k++) {
+        hsp = hit.getHsp(k);
+        from = Math.min(hsp.getQuery().getFrom(), hsp.getQuery().getTo()) - 1;
+        to = Math.max(hsp.getQuery().getFrom(), hsp.getQuery().getTo()) - 1;
+        from = Math.max(0, Math.min(nBins - 1, from / binSize));
+        to = Math.max(0, Math.min(nBins - 1, to / binSize));
+        counts[from]++;
+        counts[to + 1]--;
+      }
+    }
+    for (i = 1; i < nBins; i++) {
+      counts[i] += counts[i - 1];
+    }
+    i = 0;
+    while (i < nBins) {
+      start = i;
+      cov = counts[i];
+      while (i < nBins && counts[i] == cov) {
+        i++;
+      }
+      if (cov == 0)
+        continue;
+      feat = CoreSystemConfigurator.getFeatureTableFactory().getFInstance();
+      feat.setKey(BHIT_COVERAGE_FEATURE_TYPE);
+      feat.setFrom(start * binSize + 1);
+      feat.setTo(Math.min(qSize, i * binSize));
+      feat.setStrand(Feature.PLUS_STRAND);
+      feat.addQualifier("HSP count", String.valueOf(cov));
+      ft.addFeature(feat);
+    }
   }
 
   /**
@@ -185,12 +283,12 @@ public class GraphicViewer extends JPanel implements BlastIterationListListener
    *          feature contains a Feature/Qualifier based representation of a
    *          BOutput.
    * */
-  private static void scanBO(String queryId, int iterNum, SROutput bo,
-      FeatureTable ft) {
+  private static void scanBO(String queryId, int iterNum, int qSize,
+      SROutput bo, FeatureTable ft) {
     SRIteration bi;
     SRHit hit;
     SRHsp hsp;
-    int j, k, size, size2, size3;
+    int j, k, size, size2, size3, nHsps;
 
     size = bo.countIteration();
     // no result... does nothing
@@ -199,12 +297,20 @@ public class GraphicViewer extends JPanel implements BlastIterationListListener
     // KLAST contains only a single iteration
     bi = bo.getIteration(iterNum - 1);
     size2 = bi.countHit();
+    nHsps = 0;
     for (j = 0; j < size2; j++) {
       hit = bi.getHit(j);
       size3 = hit.countHsp();
       for (k = 0; k < size3; k++) {
+        // too many HSPs to be drawn: best ones are displayed, all of them
+        // are summarized in the overview
+        if (nHsps == MAX_DETAILED_HSPS) {
+          prepareCoverageFeatures(bi, qSize, ft);
+          return;
+        }
         hsp = hit.getHsp(k);
         prepareFeature(queryId, iterNum, hit, hsp, ft);
+        nHsps++;
       }
     }
   }
@@ -267,7 +373,7 @@ public class GraphicViewer extends JPanel implements BlastIterationListListener
 
     // prepare the FeatureTable with KLAST results
     ft = CoreSystemConfigurator.getFeatureTableFactory().getFTInstance();
-    scanBO(queryId, iterNum, output, ft);
+    scanBO(queryId, iterNum, qSize, output, ft);
 
     // now, prepare a "fake sequence"
     sequence = prepareDSequence(queryId, description, qSize, isProt);
@@ -295,11 +401,49 @@ public class GraphicViewer extends JPanel implements BlastIterationListListener
   public void iterationChanged(BlastIterationListEvent e) {
     BlastIteration iter = (BlastIteration) e.getBlastIteration();
 
+    _dataGeneration++;
     if (iter == null || iter.getIteration().countHit() == 0) {
       _cartoViewer.cleanViewer();
     } else {
-      _cartoViewer.setData(prepareViewerData(iter.getEntry().getResult(), iter
-          .getIteration().getIterationIterNum()));
+      EZEnvironment.setWaitCursor();
+      new PrepareDataThread(iter, _dataGeneration).start();
+    }
+  }
+
+  /**
+   * Prepares the viewer data in the background.
+   */
+  private class PrepareDataThread extends Thread {
+    private BlastIteration iter;
+    private int            generation;
+
+    public PrepareDataThread(BlastIteration iter, int generation) {
+      this.iter = iter;
+      this.generation = generation;
+    }
+
+    public void run() {
+      BankSequenceDescriptor data = null;
+
+      try {
+        data = prepareViewerData(iter.getEntry().getResult(), iter
+            .getIteration().getIterationIterNum());
+      } catch (Exception ex) {
+        EZLogger.warn(ex.toString());
+      }
+      final BankSequenceDescriptor sd = data;
+      SwingUtilities.invokeLater(new Runnable() {
+        public void run() {
+          EZEnvironment.setDefaultCursor();
+          // another iteration may have been selected in the meantime
+          if (generation != _dataGeneration)
+            return;
+          if (sd != null)
+            _cartoViewer.setData(sd);
+          else
+            _cartoViewer.cleanViewer();
+        }
+      });
     }
   }
 
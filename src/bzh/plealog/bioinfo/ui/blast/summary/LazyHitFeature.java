@@ -0,0 +1,159 @@
+/* Copyright (C) 2003-2019 Patrick G. Durand
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *     https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ */
+package bzh.plealog.bioinfo.ui.blast.summary;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+
+import bzh.plealog.bioinfo.api.data.feature.Feature;
+import bzh.plealog.bioinfo.api.data.feature.Qualifier;
+import bzh.plealog.bioinfo.api.data.searchresult.SRHit;
+import bzh.plealog.bioinfo.api.data.searchresult.SRHsp;
+import bzh.plealog.bioinfo.data.feature.IFeature;
+
+/**
+ * This is a Feature representation of a SRHit/SRHsp. Location and strand are
+ * set when the feature is created, whereas qualifiers are only created when
+ * they are accessed for the first time, i.e. usually when the feature is
+ * selected by the user. This saves a lot of time and memory when displaying
+ * results having thousands of HSPs.
+ *
+ * @author Patrick G. Durand
+ */
+public class LazyHitFeature extends IFeature {
+  private static final long serialVersionUID = -2893637196330366917L;
+  private transient String  _queryId;
+  private transient int     _queryNum;
+  private transient SRHit   _hit;
+  private transient SRHsp   _hsp;
+  private boolean           _loaded;
+
+  /**
+   * Constructor.
+   *
+   * @param key feature key
+   * @param queryId the query ID. Can be null.
+   * @param queryNum the query order number
+   * @param hit the hit
+   * @param hsp the hsp
+   */
+  public LazyHitFeature(String key, String queryId, int queryNum, SRHit hit, SRHsp hsp) {
+    super();
+    setKey(key);
+    _queryId = queryId;
+    _queryNum = queryNum;
+    _hit = hit;
+    _hsp = hsp;
+  }
+
+  private synchronized void loadQualifiers() {
+    if (_loaded) {
+      return;
+    }
+    _loaded = true;
+    GraphicViewer.addQualifiers(this, _queryId, _queryNum, _hit, _hsp);
+    releaseData();
+  }
+
+  private void releaseData() {
+    _hit = null;
+    _hsp = null;
+    _queryId = null;
+  }
+
+  /**
+   * Figures out whether or not qualifiers have already been created.
+   */
+  public synchronized boolean isLoaded() {
+    return _loaded;
+  }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    loadQualifiers();
+    out.defaultWriteObject();
+  }
+
+  @Override
+  public ArrayList<Qualifier> getQualifiers() {
+    loadQualifiers();
+    return super.getQualifiers();
+  }
+
+  @Override
+  public synchronized void setQualifiers(ArrayList<Qualifier> quals) {
+    _loaded = true;
+    releaseData();
+    super.setQualifiers(quals);
+  }
+
+  @Override
+  public Qualifier addQualifier(String name, String value) {
+    loadQualifiers();
+    return super.addQualifier(name, value);
+  }
+
+  @Override
+  public void addQualifier(Qualifier qual) {
+    loadQualifiers();
+    super.addQualifier(qual);
+  }
+
+  @Override
+  public int qualifiers() {
+    loadQualifiers();
+    return super.qualifiers();
+  }
+
+  @Override
+  public Qualifier getQualifier(int idx) {
+    loadQualifiers();
+    return super.getQualifier(idx);
+  }
+
+  @Override
+  public Enumeration<Qualifier> enumQualifiers() {
+    loadQualifiers();
+    return super.enumQualifiers();
+  }
+
+  @Override
+  public synchronized void copy(Feature feat) {
+    _loaded = true;
+    releaseData();
+    super.copy(feat);
+  }
+
+  @Override
+  public Feature clone() {
+    loadQualifiers();
+    return super.clone();
+  }
+
+  @Override
+  public Feature cut(int from, int to) {
+    loadQualifiers();
+    return super.cut(from, to);
+  }
+
+  @Override
+  public String getStringRepr() {
+    loadQualifiers();
+    return super.getStringRepr();
+  }
+}
@@ -0,0 +1,143 @@
+/* Copyright (C) 2003-2019 Patrick G. Durand
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *     https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ */
+package bzh.plealog.bioinfo.ui.carto.core;
+
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class stores the images of drawing lanes rendered by a CartoViewerPanel.
+ * Images are square tiles identified by their column and row indexes; all
+ * tiles are computed for a same zoom level, i.e. the width of drawing lanes.
+ * Setting another zoom level discards all tiles. The cache is bounded by a
+ * number of pixels; least recently used tiles are discarded first.
+ *
+ * This class is not thread-safe: it is intended to be used from the EDT.
+ *
+ * @author Patrick G. Durand
+ */
+public class CartoTileCache {
+  private LinkedHashMap<Long, BufferedImage> _tiles;
+  private long                               _pixels;
+  private int                                _zoomWidth = -1;
+
+  /**size of a tile. Unit is pixels.*/
+  public static final int TILE_SIZE = 256;
+
+  /**maximum number of pixels stored in the cache, i.e. 32 Mb of RGB images.*/
+  public static final long MAX_CACHED_PIXELS = 8L * 1024L * 1024L;
+
+  /**
+   * Constructor.
+   */
+  public CartoTileCache() {
+    _tiles = new LinkedHashMap<>(64, 0.75f, true);
+  }
+
+  private Long getKey(int col, int row) {
+    return Long.valueOf((((long) col) << 32) | (row & 0xFFFFFFFFL));
+  }
+
+  /**
+   * Sets the zoom level for which tiles are computed. All tiles are discarded
+   * if the zoom level changes.
+   *
+   * @param zoomWidth the width of drawing lanes
+   */
+  public void setZoomWidth(int zoomWidth) {
+    if (zoomWidth != _zoomWidth) {
+      clear();
+      _zoomWidth = zoomWidth;
+    }
+  }
+
+  /**
+   * Returns a tile. Returns null if that tile is not cached.
+   */
+  public BufferedImage getTile(int col, int row) {
+    return _tiles.get(getKey(col, row));
+  }
+
+  /**
+   * Adds a tile to the cache.
+   */
+  public void putTile(int col, int row, BufferedImage img) {
+    Iterator<Map.Entry<Long, BufferedImage>> iter;
+    BufferedImage old;
+
+    old = _tiles.put(getKey(col, row), img);
+    if (old != null) {
+      _pixels -= getPixels(old);
+    }
+    _pixels += getPixels(img);
+    iter = _tiles.entrySet().iterator();
+    while (_pixels > MAX_CACHED_PIXELS && iter.hasNext()) {
+      old = iter.next().getValue();
+      if (old == img) {
+        continue;
+      }
+      _pixels -= getPixels(old);
+      iter.remove();
+    }
+  }
+
+  private long getPixels(BufferedImage img) {
+    return (long) img.getWidth() * (long) img.getHeight();
+  }
+
+  /**
+   * Discards the tiles located within a horizontal range of pixels, for all
+   * rows.
+   *
+   * @param fromX first pixel of the range
+   * @param toX last pixel of the range
+   */
+  public void invalidateColumns(int fromX, int toX) {
+    Iterator<Map.Entry<Long, BufferedImage>> iter;
+    Map.Entry<Long, BufferedImage> entry;
+    int col, fromCol, toCol;
+
+    fromCol = Math.max(0, fromX) / TILE_SIZE;
+    toCol = Math.max(0, toX) / TILE_SIZE;
+    iter = _tiles.entrySet().iterator();
+    while (iter.hasNext()) {
+      entry = iter.next();
+      col = (int) (entry.getKey().longValue() >> 32);
+      if (col >= fromCol && col <= toCol) {
+        _pixels -= getPixels(entry.getValue());
+        iter.remove();
+      }
+    }
+  }
+
+  /**
+   * Discards all tiles.
+   */
+  public void clear() {
+    _tiles.clear();
+    _pixels = 0;
+  }
+
+  /**
+   * Returns the number of tiles contained in the cache.
+   */
+  public int size() {
+    return _tiles.size();
+  }
+}
@@ -23,13 +23,23 @@ import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
 import java.awt.event.InputEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import javax.swing.AbstractListModel;
 import javax.swing.DefaultListCellRenderer;
@@ -42,13 +52,19 @@ import javax.swing.JScrollPane;
 import javax.swing.ListModel;
 import javax.swing.ListSelectionModel;
 import javax.swing.SwingConstants;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+import com.plealog.genericapp.api.log.EZLogger;
 
 import bzh.plealog.bioinfo.api.data.feature.Feature;
+import bzh.plealog.bioinfo.api.data.sequence.DRulerModel;
 import bzh.plealog.bioinfo.api.data.sequence.DSequence;
 import bzh.plealog.bioinfo.ui.carto.drawer.BasicFeatureDrawingLane;
 import bzh.plealog.bioinfo.ui.carto.drawer.DrawingLane;
 import bzh.plealog.bioinfo.ui.carto.drawer.DrawingLaneBase;
 import bzh.plealog.bioinfo.ui.carto.drawer.FeatureDrawingLane;
+import bzh.plealog.bioinfo.ui.carto.drawer.SequenceProfileDrawingLane;
 import bzh.plealog.bioinfo.ui.carto.event.SViewerListenerSupport;
 import bzh.plealog.bioinfo.ui.carto.event.SViewerSelectionEvent;
 import bzh.plealog.bioinfo.ui.carto.event.SViewerSelectionListener;
@@ -71,11 +87,32 @@ public class CartoViewerPanel extends JPanel {
   private DSequence              _refSequence;
   private HashSet<String>        _featureTypesToDisplay;
   private boolean                _drawGrid=false;
+  private CartoTileCache         _tileCache = new CartoTileCache();
+  private boolean                _parallelRendering = true;
+  //ruler range of the highlighted selected object; -1 if none
+  private int                    _selFrom = -1;
+  private int                    _selTo = -1;
+  private ProfileReadyListener   _profileListener = new ProfileReadyListener();
   
   public static enum MOUSE_MODE {SELECTION, ZOOM};
 
   private static final Color ZOMMER_CLR = new Color(192, 192, 192, 192);
 
+  //pixels added on both sides of a selected object to account for its highlight
+  private static final int SELECTION_MARGIN = 8;
+
+  //used to render feature lanes concurrently, see renderTiles()
+  private static final int             RENDERING_THREADS = Runtime.getRuntime().availableProcessors();
+  private static final ExecutorService LANE_RENDERER = Executors.newFixedThreadPool(
+      Math.max(1, RENDERING_THREADS), new ThreadFactory() {
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, "CartoViewerPanel-renderer");
+      t.setDaemon(true);
+      return t;
+    }
+  });
+
   /**
    * Standard constructor.
    */
@@ -111,9 +148,99 @@ public class CartoViewerPanel extends JPanel {
     for(DrawingLane dl : _dLanesToDisplay){
       dl.setDrawGrid(b);
     }
+    invalidateCache();
+  }
+  /**
+   * Figures out whether or not feature lanes are rendered concurrently using
+   * several threads. Default is true. This has no effect on single processor 
+   * computers.
+   */
+  public void setParallelRendering(boolean parallel){
+    _parallelRendering = parallel;
+  }
+  /**
+   * Figures out whether or not feature lanes are rendered concurrently.
+   */
+  public boolean isParallelRendering(){
+    return _parallelRendering;
+  }
+  /**
+   * Discards the images of drawing lanes kept by this viewer to speed up
+   * painting. This is done automatically when using the methods of this
+   * viewer; call this method after modifying a drawing lane directly.
+   */
+  public void invalidateCache(){
+    _tileCache.clear();
+  }
+  /**
+   * Discards the tiles containing the highlight of the previously selected
+   * object and of the newly selected one. Selection is highlighted by the
+   * drawing lanes, so only the tile columns spanning these objects have to be
+   * painted again. All tiles are discarded when the location of the new object
+   * cannot be figured out.
+   * 
+   * @param obj the selected object. Can be null.
+   * @param from ruler position of the selected range. -1 if undefined.
+   * @param to ruler position of the selected range. -1 if undefined.
+   */
+  private void invalidateSelectedTiles(Object obj, int from, int to){
+    DRulerModel rModel;
+    Feature     feat;
+    int         rFrom, rTo;
+
+    if (_selFrom!=-1){
+      invalidateColumns(_selFrom, _selTo);
+    }
+    _selFrom = _selTo = -1;
+    if (obj==null || _dLanesToDisplay.isEmpty()){
+      return;
+    }
+    if (obj instanceof Feature && _dLanesToDisplay.get(0).getSequence()!=null){
+      //feature lanes use sequence coordinates
+      feat = (Feature) obj;
+      rModel = _dLanesToDisplay.get(0).getSequence().getRulerModel();
+      rFrom = feat.getFrom()-rModel.getStartPos();
+      rTo = feat.getTo()-rModel.getStartPos();
+      if (from!=-1){
+        rFrom = Math.min(rFrom, from);
+        rTo = Math.max(rTo, to);
+      }
+    }
+    else if (from!=-1){
+      rFrom = from;
+      rTo = to;
+    }
+    else{
+      //object highlighted elsewhere in the lanes
+      rFrom = 0;
+      rTo = Integer.MAX_VALUE;
+    }
+    _selFrom = Math.max(0, rFrom);
+    _selTo = Math.max(_selFrom, rTo);
+    invalidateColumns(_selFrom, _selTo);
+  }
+  /**
+   * Discards the tiles spanning a range of ruler positions.
+   */
+  private void invalidateColumns(int rFrom, int rTo){
+    DrawingLane dl;
+    double      xFactor;
+    int         x1, x2;
+
+    if (_dLanesToDisplay.isEmpty()){
+      return;
+    }
+    //all drawing lanes have same xFactor and left margin
+    dl = _dLanesToDisplay.get(0);
+    xFactor = dl.computeScaleFactor();
+    x1 = dl.getLeftMargin() + (int)(xFactor * (double) rFrom) - SELECTION_MARGIN;
+    x2 = (int) Math.min(Integer.MAX_VALUE,
+        dl.getLeftMargin() + xFactor * ((double) rTo + 1d) + SELECTION_MARGIN);
+    _tileCache.invalidateColumns(x1, x2);
   }
   private void prepareDisplayDataModel(){
     String fType;
+    invalidateCache();
     _dLanesToDisplay.clear();
     for(DrawingLane dl : _dLanesDataModel){
       if ((_featureTypesToDisplay.isEmpty()==false) && 
@@ -127,6 +254,14 @@ public class CartoViewerPanel extends JPanel {
       _dLanesToDisplay.add(dl);
     }
   }
+  /**
+   * Listens to lanes whose content is computed in the background.
+   */
+  private void addLaneListener(DrawingLane dl){
+    if (dl instanceof SequenceProfileDrawingLane){
+      ((SequenceProfileDrawingLane)dl).addChangeListener(_profileListener);
+    }
+  }
   /**
    * Adds a drawing lane to this viewer.
    */
@@ -135,6 +270,7 @@ public class CartoViewerPanel extends JPanel {
     _dLanesDataModel.add(dl);
     //super.setPreferredSize(null);
     addSViewerSelectionListener(dl);
+    addLaneListener(dl);
     prepareDisplayDataModel();
   }
   /**
@@ -146,6 +282,7 @@ public class CartoViewerPanel extends JPanel {
       _dLanesDataModel.add(dl);
       //super.setPreferredSize(null);
       addSViewerSelectionListener(dl);
+      addLaneListener(dl);
     }
     prepareDisplayDataModel();
   }
@@ -155,10 +292,15 @@ public class CartoViewerPanel extends JPanel {
   public synchronized void clear(){
     for(DrawingLane dl : _dLanesDataModel){
       removeSViewerSelectionListener(dl);
+      if (dl instanceof SequenceProfileDrawingLane){
+        ((SequenceProfileDrawingLane)dl).removeChangeListener(_profileListener);
+      }
     }
     _dLanesToDisplay.clear();
     _dLanesDataModel.clear();
     _featureTypesToDisplay.clear();
+    invalidateCache();
+    _selFrom = _selTo = -1;
     //this.revalidate();
     //this.repaint();
     if (_jHeader!=null)
@@ -192,6 +334,7 @@ public class CartoViewerPanel extends JPanel {
         ((FeatureDrawingLane)dl).setFeaturesVisible(visible);
       }
     }
+    invalidateCache();
   }
   
   /**
@@ -214,6 +357,7 @@ public class CartoViewerPanel extends JPanel {
         if (fdl.setFeatureVisible(feat, visible)){
           //feature is contained in a single lane; so if found, we can
           //end loop through all features
+          invalidateCache();
           return;
         }
       }
@@ -228,6 +372,7 @@ public class CartoViewerPanel extends JPanel {
    * its highlight.
    */
   public void setSelectedObject(Object obj){
+    invalidateSelectedTiles(obj, -1, -1);
     _sLiseteners.fireSelectionEvent(
         new SViewerSelectionEvent(
             CartoViewerPanel.this,
@@ -322,6 +467,7 @@ public class CartoViewerPanel extends JPanel {
       dl.setLeftMargin(leftMargin);
       dl.setRightMargin(rightMargin);
     }
+    invalidateCache();
   }
 
   /**
@@ -334,6 +480,7 @@ public class CartoViewerPanel extends JPanel {
       dim = dl.getPreferredSize();
       dim.width = width;
     }
+    invalidateCache();
   }
   /**
    * Draws the selection zone.
@@ -350,6 +497,202 @@ public class CartoViewerPanel extends JPanel {
     g.fillRect(x1, 0, x2-x1+1, this.getBounds().height);
     g.setColor(Color.BLACK);
   }
+  /**
+   * Paints the drawing lanes.
+   * 
+   * @param g the graphics
+   * @param area horizontal region of the viewer given to the lanes
+   * @param clip region of the viewer to paint
+   */
+  private void paintLanes(Graphics g, Rectangle area, Rectangle clip){
+    Rectangle laneBounds;
+    Dimension dim;
+    int       height = 0;
+
+    laneBounds = new Rectangle();
+    laneBounds.x = area.x; 
+    laneBounds.width = area.width; 
+    for(DrawingLane dl : _dLanesToDisplay){
+      dim = dl.getPreferredSize();
+      laneBounds.y = height; 
+      laneBounds.height = dim.height;
+      height+=dim.height;
+      if (laneBounds.y>=clip.y+clip.height || laneBounds.y+laneBounds.height<=clip.y){
+        continue;
+      }
+      g.setClip(laneBounds.x, laneBounds.y, laneBounds.width,
+          laneBounds.height);
+      g.clipRect(clip.x, clip.y, clip.width, clip.height);
+      dl.paintLane((Graphics2D)g, laneBounds);
+    }
+  }
+  /**
+   * Returns the region of the viewer covered by a tile.
+   */
+  private Rectangle getTileBounds(Point tile){
+    return new Rectangle(tile.x*CartoTileCache.TILE_SIZE, tile.y*CartoTileCache.TILE_SIZE, 
+        CartoTileCache.TILE_SIZE, CartoTileCache.TILE_SIZE);
+  }
+  /**
+   * Computes the images of some regions of the viewer. Images are then kept in the 
+   * tile cache until lanes data, their visibility or their width change. 
+   * 
+   * Feature lanes contained in these regions are rendered concurrently, each of them 
+   * in its own image, then these images are copied to the tiles. Other lanes are 
+   * painted by the calling thread.
+   * 
+   * @param g the graphics of the viewer
+   * @param tiles column and row indexes of the tiles to compute
+   * 
+   * @return the tile images
+   */
+  private HashMap<Point, BufferedImage> renderTiles(Graphics2D g, List<Point> tiles){
+    HashMap<Point, BufferedImage> images;
+    HashMap<Point, Graphics2D>    graphics;
+    ArrayList<LaneRenderer>       renderers;
+    LaneRenderer                  renderer;
+    List<Future<BufferedImage>>   results;
+    BufferedImage                 img, laneImg;
+    Graphics2D                    g2;
+    Rectangle                     area, laneBounds, laneClip;
+    Dimension                     dim;
+    boolean                       parallel;
+    int                           i, height;
+
+    images = new HashMap<>();
+    graphics = new HashMap<>();
+    renderers = new ArrayList<>();
+    parallel = _parallelRendering && RENDERING_THREADS>1;
+    for(Point tile : tiles){
+      area = getTileBounds(tile);
+      img = new BufferedImage(area.width, area.height, BufferedImage.TYPE_INT_RGB);
+      g2 = createTileGraphics(img, g, area);
+      height = 0;
+      for(DrawingLane dl : _dLanesToDisplay){
+        dim = dl.getPreferredSize();
+        laneBounds = new Rectangle(area.x, height, area.width, dim.height);
+        height+=dim.height;
+        laneClip = laneBounds.intersection(area);
+        if (laneClip.isEmpty()){
+          continue;
+        }
+        if (parallel && dl instanceof FeatureDrawingLane){
+          renderers.add(new LaneRenderer(tile, dl, laneBounds, laneClip, g));
+        }
+        else{
+          g2.setClip(laneClip);
+          dl.paintLane(g2, laneBounds);
+        }
+      }
+      images.put(tile, img);
+      graphics.put(tile, g2);
+    }
+    //rendering of feature lanes
+    results = null;
+    if (renderers.size()>1){
+      try {
+        results = LANE_RENDERER.invokeAll(renderers);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    for(i=0;i<renderers.size();i++){
+      renderer = renderers.get(i);
+      laneImg = null;
+      if (results!=null){
+        try {
+          laneImg = results.get(i).get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+          EZLogger.warn("unable to render lane: "+e.getCause());
+        }
+      }
+      if (laneImg==null){
+        //no worker thread used or rendering failed: paint lane from here
+        laneImg = renderer.call();
+      }
+      laneClip = renderer.getClip();
+      g2 = graphics.get(renderer.getTile());
+      g2.setClip(laneClip);
+      g2.drawImage(laneImg, laneClip.x, laneClip.y, null);
+    }
+    for(Point tile : tiles){
+      graphics.get(tile).dispose();
+      _tileCache.putTile(tile.x, tile.y, images.get(tile));
+    }
+    return images;
+  }
+  /**
+   * Creates a graphics to paint a region of the viewer into an image.
+   * 
+   * @param img the image
+   * @param g the graphics of the viewer
+   * @param area region of the viewer painted in the image
+   */
+  private Graphics2D createTileGraphics(BufferedImage img, Graphics2D g, Rectangle area){
+    Graphics2D g2;
+
+    g2 = img.createGraphics();
+    //same rendering settings as the viewer, lanes are usually anti-aliased
+    //since DrawingLaneBase turns that hint on
+    g2.setRenderingHints(g.getRenderingHints());
+    g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    g2.setColor(this.getBackground());
+    g2.fillRect(0, 0, img.getWidth(), img.getHeight());
+    g2.setFont(this.getFont());
+    g2.translate(-area.x, -area.y);
+    return g2;
+  }
+  /**
+   * Renders the visible part of a lane within its own image.
+   */
+  private class LaneRenderer implements Callable<BufferedImage>{
+    private Point       tile;
+    private DrawingLane lane;
+    private Rectangle   laneBounds;
+    private Rectangle   clip;
+    private Graphics2D  viewerGraphics;
+
+    private LaneRenderer(Point tile, DrawingLane lane, Rectangle laneBounds, Rectangle clip, Graphics2D g){
+      this.tile = tile;
+      this.lane = lane;
+      this.laneBounds = laneBounds;
+      this.clip = clip;
+      this.viewerGraphics = g;
+    }
+    public Point getTile(){
+      return tile;
+    }
+    public Rectangle getClip(){
+      return clip;
+    }
+    @Override
+    public BufferedImage call(){
+      BufferedImage img;
+      Graphics2D    g2;
+
+      img = new BufferedImage(clip.width, clip.height, BufferedImage.TYPE_INT_RGB);
+      g2 = createTileGraphics(img, viewerGraphics, clip);
+      g2.setClip(clip);
+      lane.paintLane(g2, laneBounds);
+      g2.dispose();
+      return img;
+    }
+  }
+  /**
+   * Figures out whether or not tiles can be used to paint this viewer. When
+   * printing or when the graphics is scaled (e.g. HiDPI screen), lanes are
+   * painted directly to preserve rendering quality.
+   */
+  private boolean canUseTiles(Graphics g){
+    AffineTransform at;
+
+    if (this.isPaintingForPrint() || !(g instanceof Graphics2D))
+      return false;
+    at = ((Graphics2D)g).getTransform();
+    return (at.getType() & ~AffineTransform.TYPE_TRANSLATION) == 0;
+  }
   public void paintComponent(Graphics g){
     super.paintComponent(g);
 
@@ -361,24 +704,53 @@ public class CartoViewerPanel extends JPanel {
     if (bRet)
       return;
     Rectangle paintBounds = g.getClipBounds();
-    Rectangle laneBounds, visibleRect;
-    Dimension dim;
-    int       height = 0;
+    HashMap<Point, BufferedImage> tiles;
+    ArrayList<Point>              missing;
+    BufferedImage                 img;
+    Rectangle                     visibleRect, tileBounds;
+    Point                         p;
+    int                           col, row, lastCol, lastRow, tile;
 
     visibleRect = this.getVisibleRect();
-    laneBounds = new Rectangle();
-    laneBounds.x = visibleRect.x; 
-    laneBounds.width = visibleRect.width; 
-    for(DrawingLane dl : _dLanesToDisplay){
-      dim = dl.getPreferredSize();
-      laneBounds.y = height; 
-      laneBounds.height = dim.height;
-      g.setClip(laneBounds.x, laneBounds.y, laneBounds.width,
-          laneBounds.height);
-      g.clipRect(paintBounds.x, paintBounds.y, paintBounds.width,
-          paintBounds.height);
-      dl.paintLane((Graphics2D)g, laneBounds);
-      height+=dim.height;
+    if (paintBounds==null){
+      paintBounds = visibleRect;
+    }
+    if (canUseTiles(g)){
+      //all drawing lanes have same width
+      _tileCache.setZoomWidth(_dLanesToDisplay.get(0).getPreferredSize().width);
+      tile = CartoTileCache.TILE_SIZE;
+      tileBounds = paintBounds.intersection(new Rectangle(
+          visibleRect.x, 0, visibleRect.width, getPanelHeight()));
+      if (!tileBounds.isEmpty()){
+        lastCol = (tileBounds.x + tileBounds.width - 1) / tile;
+        lastRow = (tileBounds.y + tileBounds.height - 1) / tile;
+        //tiles are kept here since the cache may be too small to contain all of
+        //them: rendering missing tiles may evict visible ones from the cache
+        tiles = new HashMap<>();
+        missing = new ArrayList<>();
+        for(row=tileBounds.y/tile;row<=lastRow;row++){
+          for(col=tileBounds.x/tile;col<=lastCol;col++){
+            p = new Point(col, row);
+            img = _tileCache.getTile(col, row);
+            if (img==null){
+              missing.add(p);
+            }
+            else{
+              tiles.put(p, img);
+            }
+          }
+        }
+        tiles.putAll(renderTiles((Graphics2D)g, missing));
+        for(row=tileBounds.y/tile;row<=lastRow;row++){
+          for(col=tileBounds.x/tile;col<=lastCol;col++){
+            g.drawImage(tiles.get(new Point(col, row)), col*tile, row*tile, null);
+          }
+        }
+      }
+    }
+    else{
+      paintLanes(g, visibleRect, paintBounds);
+      g.setClip(paintBounds);
     }
     //g.setClip(paintBounds.x, 0, paintBounds.width, height);
     //g.clipRect(paintBounds.x, 0, paintBounds.width, height);
@@ -530,6 +902,9 @@ public class CartoViewerPanel extends JPanel {
         }
         if (obj!=null){
           dl = _dLanesToDisplay.get(getClickedLane(_stopSelectionPos.x, _stopSelectionPos.y));
+          invalidateSelectedTiles(obj, 
+              dl.getRulerPositionAt(Math.min(_startSelectionPos.x, _stopSelectionPos.x)),
+              dl.getRulerPositionAt(Math.max(_startSelectionPos.x, _stopSelectionPos.x)));
           _sLiseteners.fireSelectionEvent(
               new SViewerSelectionEvent(
                   dl,
@@ -539,6 +914,7 @@ public class CartoViewerPanel extends JPanel {
                   dl.getRulerPositionAt(Math.max(_startSelectionPos.x, _stopSelectionPos.x))));
         }
         else{
+          invalidateSelectedTiles(null, -1, -1);
           _sLiseteners.fireSelectionEvent(
               new SViewerSelectionEvent(
                   CartoViewerPanel.this, SViewerSelectionEvent.SEL_TYPE.EMPTY, null, -1, -1));
@@ -644,6 +1020,16 @@ public class CartoViewerPanel extends JPanel {
       return lbl;  
     }
   }
+  /**
+   * Paints again a sequence profile lane once its profile has been computed:
+   * tiles painted before only contain the base line of the lane.
+   */
+  private class ProfileReadyListener implements ChangeListener{
+    public void stateChanged(ChangeEvent e){
+      invalidateCache();
+      repaint();
+    }
+  }
   /*
 	@Override
 	public Dimension getPreferredScrollableViewportSize() {
@@ -17,6 +17,7 @@
 package bzh.plealog.bioinfo.ui.carto.data;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import bzh.plealog.bioinfo.api.core.config.CoreSystemConfigurator;
 import bzh.plealog.bioinfo.api.data.feature.Feature;
@@ -33,10 +34,13 @@ public class FeatureForACategory {
   private double                           factor;
   private String                           catName;
   private boolean                          forceOneLanePerCategory;
+  // used to quickly locate the first lane that can accept a feature
+  private LaneCursors                      cursors;
 
   private FeatureForACategory(){
     super();
     organizedFeatures = new ArrayList<OrganizedFeatureTable>();
+    cursors = new LaneCursors();
   }
   /**
    * Constructor.
@@ -76,13 +80,27 @@ public class FeatureForACategory {
    * Adds a feature.
    */
   protected void add(Feature feat){
-    for(OrganizedFeatureTable oft : organizedFeatures){
-      if (oft.addFeature(feat))
-        return;
+    OrganizedFeatureTable oft;
+    int                   lane;
+
+    //feature goes to the first lane that accepts it, as if lanes were
+    //checked one after the other
+    if (forceOneLanePerCategory){
+      lane = organizedFeatures.isEmpty() ? -1 : 0;
+    }
+    else{
+      lane = cursors.findFirstLaneBefore((int)(factor * (double) feat.getFrom()));
+    }
+    if (lane==-1){
+      oft = new OrganizedFeatureTable(factor);
+      organizedFeatures.add(oft);
+      lane = cursors.addLane();
+    }
+    else{
+      oft = organizedFeatures.get(lane);
     }
-    OrganizedFeatureTable oft = new OrganizedFeatureTable(factor);
     oft.addFeature(feat);
-    organizedFeatures.add(oft);
+    cursors.setCursor(lane, oft.positionCursor);
   }
   /**
    * Returns the number of lanes contained in this object.
@@ -102,6 +120,67 @@ public class FeatureForACategory {
   public String getCategoryName(){
     return catName;
   }
+  /**
+   * Utility class storing the position cursor of each lane in a segment tree 
+   * of minimum values. It is used to locate the first lane having a cursor 
+   * lower than a given position in O(log(lanes)).
+   */
+  private static class LaneCursors {
+    // tree[1] is the root; leaves start at capacity
+    private int[] tree = new int[2];
+    private int   capacity = 1;
+    private int   lanes;
+
+    /**
+     * Returns the first lane having a cursor lower than pos. Returns -1 if none.
+     */
+    public int findFirstLaneBefore(int pos){
+      int node;
+
+      if (lanes==0 || tree[1]>=pos)
+        return -1;
+      node = 1;
+      while(node<capacity){
+        node = 2*node;
+        if (tree[node]>=pos)
+          node++;
+      }
+      return node-capacity;
+    }
+    /**
+     * Adds a new lane and returns its index.
+     */
+    public int addLane(){
+      int[] old;
+      int   i;
+
+      if (lanes==capacity){
+        old = tree;
+        capacity *= 2;
+        tree = new int[2*capacity];
+        Arrays.fill(tree, Integer.MAX_VALUE);
+        for(i=0;i<lanes;i++){
+          tree[capacity+i] = old[capacity/2+i];
+        }
+        for(i=capacity-1;i>0;i--){
+          tree[i] = Math.min(tree[2*i], tree[2*i+1]);
+        }
+      }
+      setCursor(lanes, -1);
+      lanes++;
+      return lanes-1;
+    }
+    /**
+     * Sets the cursor of a lane.
+     */
+    public void setCursor(int lane, int cursor){
+      int node = capacity+lane;
+      tree[node] = cursor;
+      for(node/=2;node>0;node/=2){
+        tree[node] = Math.min(tree[2*node], tree[2*node+1]);
+      }
+    }
+  }
   /**
    * Utility class used during features handling.
    */
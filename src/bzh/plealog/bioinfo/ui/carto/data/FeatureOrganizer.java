@@ -18,6 +18,7 @@ package bzh.plealog.bioinfo.ui.carto.data;
 
 import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.List;
 
 import bzh.plealog.bioinfo.api.data.feature.Feature;
@@ -56,16 +57,48 @@ public class FeatureOrganizer {
     this.forceOneLanePerCategory = forceOneLanePerCategory;
   }
 
-  private void processFeature(Feature feat, ArrayList<FeatureForACategory> results){
+  private int findCategory(Feature feat){
     int i, size;
 
     size = matchers.size();
     for(i=0;i<size;i++){
       if (matchers.get(i).match(feat)){
-        results.get(i).add(feat);
-        return;
+        return i;
       }
     }
+    return -1;
+  }
+  /**
+   * Figures out whether or not matchers only rely on feature keys. In such a
+   * case, the category of a feature can be retrieved from its key.
+   */
+  private boolean isKeyBasedMatching(){
+    for(FeatureCategoryMatcher matcher : matchers){
+      //sub-classes may override match()
+      if (matcher.getClass()!=FeatureCategoryMatcher.class)
+        return false;
+    }
+    return true;
+  }
+  private void processFeature(Feature feat, ArrayList<FeatureForACategory> results, 
+      HashMap<String, Integer> categories){
+    Integer cat;
+    int     idx;
+
+    if (categories==null){
+      idx = findCategory(feat);
+    }
+    else{
+      cat = categories.get(feat.getKey());
+      if (cat==null){
+        cat = findCategory(feat);
+        categories.put(feat.getKey(), cat);
+      }
+      idx = cat;
+    }
+    if (idx!=-1){
+      results.get(idx).add(feat);
+    }
   }
   /**
    * Call this method to organize the features on various category lanes.
@@ -77,6 +110,7 @@ public class FeatureOrganizer {
     ArrayList<FeatureForACategory> results;
     FeatureForACategory            cat;
     Enumeration<Feature>           myEnum;
+    HashMap<String, Integer>       categories;
     String                         name;
 
     //step 1: order features by positions
@@ -89,9 +123,11 @@ public class FeatureOrganizer {
       cat = new FeatureForACategory(name, xFactor, forceOneLanePerCategory);
       results.add(cat);
     }
+    //category of each feature key, when it only depends on that key
+    categories = isKeyBasedMatching() ? new HashMap<String, Integer>() : null;
     myEnum = fTable.enumFeatures();
     while(myEnum.hasMoreElements()){
-      processFeature((Feature) myEnum.nextElement(), results);
+      processFeature((Feature) myEnum.nextElement(), results, categories);
     }
     return results;
   }
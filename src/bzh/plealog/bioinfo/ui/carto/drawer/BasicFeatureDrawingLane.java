@@ -22,7 +22,6 @@ import java.awt.Rectangle;
 import java.awt.Stroke;
 import java.util.ArrayList;
 import java.util.Hashtable;
-import java.util.Iterator;
 import java.util.List;
 
 import bzh.plealog.bioinfo.api.data.feature.FRange;
@@ -46,12 +45,25 @@ public class BasicFeatureDrawingLane extends DrawingLaneBase implements FeatureD
   // used for fast lookup
   private Hashtable<Feature, FeatureGraphics> hfeatures;
   private Feature               selectedFeature;
+  // used to locate features to draw: sequence coordinates
+  private FeatureIntervalIndex  drawIndex;
+  // used to locate clicked feature: ruler coordinates, see getClickIndex()
+  private FeatureIntervalIndex  clickIndex;
+  private DRulerModel           clickIndexModel;
+  // used to draw features as a histogram when zooming out, see getDensityIndex()
+  private FeatureDensityIndex   densityIndex;
+  private double                densityThreshold = DEF_DENSITY_THRESHOLD;
 
   /**this is the minimum width of any feature drawn on a viewer.*/
   private static final int MIN_WIDTH = 3;
 
   private static final int DECAL_COORD = 0;
 
+  /**default pixels-per-residue value below which features are drawn as a density histogram.*/
+  public static final double DEF_DENSITY_THRESHOLD = 0.05;
+  /**a lane switches to density mode only when it contains at least that number of features.*/
+  public static final int    MIN_DENSITY_FEATURES = 200;
+
   /**
    * Standard constructor.
    * 
@@ -79,6 +91,132 @@ public class BasicFeatureDrawingLane extends DrawingLaneBase implements FeatureD
     for(FeatureGraphics fg : features){
       hfeatures.put(fg.getFeature(), fg);
     }
+    drawIndex = createDrawIndex(features);
+    clickIndex = null;
+    clickIndexModel = null;
+    densityIndex = null;
+  }
+
+  /**
+   * Sets the pixels-per-residue value below which features are drawn as a
+   * density histogram instead of individual glyphs. Pass zero to always draw
+   * glyphs.
+   */
+  public void setDensityThreshold(double threshold){
+    densityThreshold = threshold;
+  }
+
+  /**
+   * Returns the pixels-per-residue value below which features are drawn as a
+   * density histogram.
+   */
+  public double getDensityThreshold(){
+    return densityThreshold;
+  }
+
+  /**
+   * Figures out whether features are drawn as a density histogram given a
+   * sequence to pixel conversion factor.
+   */
+  public boolean isDensityMode(double xFactor){
+    return xFactor>0d && xFactor<densityThreshold && features.size()>=MIN_DENSITY_FEATURES;
+  }
+
+  /**
+   * Creates the index of features using their full extent on the sequence, 
+   * i.e. including all elements of segmented features.
+   */
+  private FeatureIntervalIndex createDrawIndex(List<FeatureGraphics> features){
+    FeatureLocation   locs;
+    Feature           feature;
+    ArrayList<FRange> fLocs;
+    int[]             starts, ends;
+    int               i, size;
+
+    size = features.size();
+    starts = new int[size];
+    ends = new int[size];
+    for(i=0;i<size;i++){
+      feature = features.get(i).getFeature();
+      locs = feature.getFeatureLocation();
+      if (locs==null || locs.elements()==1){
+        starts[i] = feature.getFrom();
+        ends[i] = feature.getTo();
+      }
+      else{
+        fLocs = locs.getAscentSortedElements();
+        starts[i] = fLocs.get(0).getFrom().getStart();
+        ends[i] = fLocs.get(fLocs.size()-1).getTo().getEnd();
+      }
+      if (ends[i]<starts[i]){
+        int tmp = starts[i];
+        starts[i] = ends[i];
+        ends[i] = tmp;
+      }
+    }
+    return new FeatureIntervalIndex(starts, ends);
+  }
+
+  /**
+   * Returns the index of features using ruler coordinates, as done by
+   * getClickedObject(). That index is created on demand.
+   */
+  private synchronized FeatureIntervalIndex getClickIndex(DRulerModel rModel){
+    Feature feature;
+    int[]   starts, ends;
+    int     i, size, from, to;
+
+    if (clickIndex!=null && clickIndexModel==rModel){
+      return clickIndex;
+    }
+    size = features.size();
+    starts = new int[size];
+    ends = new int[size];
+    for(i=0;i<size;i++){
+      feature = features.get(i).getFeature();
+      from = rModel.getRulerPos(feature.getFrom());
+      to = rModel.getRulerPos(feature.getTo());
+      starts[i] = Math.min(from, to);
+      ends[i] = Math.max(from, to);
+    }
+    clickIndex = new FeatureIntervalIndex(starts, ends);
+    clickIndexModel = rModel;
+    return clickIndex;
+  }
+
+  /**
+   * Returns the density index of visible features. That index is created on demand.
+   */
+  private synchronized FeatureDensityIndex getDensityIndex(DRulerModel rModel){
+    FeatureDensityIndex index;
+    int                 item, size;
+
+    if (densityIndex!=null && densityIndex.getOrigin()==rModel.getStartPos()){
+      return densityIndex;
+    }
+    index = new FeatureDensityIndex(rModel.getStartPos(), this.getSequence().size());
+    size = drawIndex.size();
+    for(item=0;item<size;item++){
+      if (features.get(item).isVisible()){
+        index.addInterval(drawIndex.getStart(item), drawIndex.getEnd(item));
+      }
+    }
+    index.build();
+    densityIndex = index;
+    return densityIndex;
+  }
+
+  /**
+   * Converts a pixel coordinate to a position using the scale factor. Value is
+   * bounded to the int range.
+   */
+  private int toPosition(double pix, double xFactor, int decal){
+    double pos = (double) decal + pix / xFactor;
+    if (pos<=Integer.MIN_VALUE)
+      return Integer.MIN_VALUE;
+    if (pos>=Integer.MAX_VALUE)
+      return Integer.MAX_VALUE;
+    return (int) pos;
   }
 
   /**
@@ -88,6 +226,7 @@ public class BasicFeatureDrawingLane extends DrawingLaneBase implements FeatureD
     for(FeatureGraphics fg : features){
       fg.setVisible(visible);
     }
+    densityIndex = null;
   }
   
   /**
@@ -98,7 +237,10 @@ public class BasicFeatureDrawingLane extends DrawingLaneBase implements FeatureD
     if (fg==null){
       return false;
     }
-    fg.setVisible(visible);
+    if (fg.isVisible()!=visible){
+      fg.setVisible(visible);
+      densityIndex = null;
+    }
     return true;
   }
   
@@ -167,7 +309,6 @@ public class BasicFeatureDrawingLane extends DrawingLaneBase implements FeatureD
   }
   
   private void drawFeatures(Graphics2D g, double xFactor, Rectangle drawingArea){
-    Iterator<FeatureGraphics> feats;
     FeatureGraphics   fGraphics;
     FeaturePainter    painter;
     FGraphics         fg;
@@ -179,10 +320,10 @@ public class BasicFeatureDrawingLane extends DrawingLaneBase implements FeatureD
     ArrayList<FRange>         fLocs;
     ArrayList<Rectangle> dBoxes, fBoxes;    
     Stroke            gStroke, stroke;
-    int               i, size, strand, from, to, lastX, curX;
+    int[]             items;
+    int               i, size, strand, from, to, lastX, curX, pos, sFrom, sTo;
 
     rModel = this.getSequence().getRulerModel();
-    feats = features.iterator();
     fBox = new Rectangle();
     from = drawingArea.x;
     to = from + drawingArea.width;// - this.getRightMargin();
@@ -200,8 +341,20 @@ public class BasicFeatureDrawingLane extends DrawingLaneBase implements FeatureD
     
     drawGrid(g, xFactor, drawingArea);
 
-    while(feats.hasNext()){
-      fGraphics = feats.next();
+    //only visit features located within the drawing area; range is enlarged on
+    //each side to account for MIN_WIDTH and pixel rounding. Features are visited
+    //in list order, so that overlapping ones are drawn as before.
+    if (xFactor>0d){
+      sFrom = toPosition(dBox.x - this.getLeftMargin() - MIN_WIDTH - 1, xFactor, rModel.getStartPos()) - 1;
+      sTo = toPosition(dBox.x + dBox.width - this.getLeftMargin() + 1, xFactor, rModel.getStartPos()) + 1;
+    }
+    else{
+      sFrom = Integer.MIN_VALUE;
+      sTo = Integer.MAX_VALUE;
+    }
+    items = drawIndex.getOverlapping(sFrom, sTo);
+    for(pos=0;pos<items.length;pos++){
+      fGraphics = features.get(items[pos]);
       if (fGraphics.isVisible()==false){
         continue;
       }
@@ -276,14 +429,104 @@ public class BasicFeatureDrawingLane extends DrawingLaneBase implements FeatureD
     }
   }
 
+  /**
+   * Returns the color used to draw the density histogram.
+   */
+  private Color getDensityColor(){
+    FGraphics fg;
+
+    for(FeatureGraphics fGraphics : features){
+      if (fGraphics.isVisible()==false)
+        continue;
+      fg = fGraphics.getFGraphics();
+      if (fg.isPaintBackground() && fg.getBackgroundColor()!=null)
+        return fg.getBackgroundColor();
+      if (fg.getLineColor()!=null)
+        return fg.getLineColor();
+    }
+    return Color.gray;
+  }
+
+  /**
+   * Draws features as a histogram of the mean feature depth. Bar heights are
+   * relative to the highest depth of the entire sequence so that they do not
+   * depend on the drawing area.
+   */
+  private void drawDensity(Graphics2D g, double xFactor, Rectangle drawingArea){
+    FeatureDensityIndex index;
+    FeatureGraphics     fGraphics;
+    DRulerModel         rModel;
+    Rectangle           fBox, dBox;
+    double              maxDepth, depth;
+    long                binStart;
+    int                 level, binSize, bin, lastBin, x1, x2, h, yBase, height;
+
+    rModel = this.getSequence().getRulerModel();
+    dBox = new Rectangle(
+        drawingArea.x, 
+        drawingArea.y+this.getTopMargin(), 
+        drawingArea.width+1, 
+        drawingArea.height-(this.getTopMargin()+this.getBottomMargin()));
+    drawGrid(g, xFactor, drawingArea);
+    index = getDensityIndex(rModel);
+    level = index.getLevel(xFactor);
+    maxDepth = index.getMaxDepth(level);
+    if (maxDepth>0d){
+      binSize = index.getBinSize(level);
+      height = dBox.height;
+      yBase = dBox.y + height;
+      bin = Math.max(0, (int) ((dBox.x - this.getLeftMargin()) / (xFactor * binSize)) - 1);
+      lastBin = Math.min(index.getBins(level)-1, 
+          (int) Math.min(Integer.MAX_VALUE, (dBox.x + dBox.width - this.getLeftMargin()) / (xFactor * binSize)) + 1);
+      g.setColor(getDensityColor());
+      for(;bin<=lastBin;bin++){
+        depth = index.getDepth(level, bin);
+        if (depth==0d)
+          continue;
+        binStart = (long) bin * binSize;
+        x1 = this.getLeftMargin() + (int)(xFactor * (double) binStart);
+        x2 = this.getLeftMargin() + (int)(xFactor * (double) (binStart + binSize));
+        h = Math.max(1, (int) Math.round(depth / maxDepth * (double) height));
+        g.fillRect(x1, yBase - h, Math.max(1, x2-x1), h);
+      }
+    }
+    //selected feature is always highlighted
+    if (selectedFeature!=null){
+      fGraphics = hfeatures.get(selectedFeature);
+      if (fGraphics!=null && fGraphics.isVisible()){
+        fBox = new Rectangle();
+        computeDrawingBox(drawingArea, fBox, rModel, xFactor, selectedFeature.getFrom(), selectedFeature.getTo());
+        if (dBox.intersects(fBox)){
+          drawSelectedFeatureBox(g, fBox, dBox);
+        }
+      }
+    }
+  }
+
   public Object getClickedObject(int x){
-    DRulerModel rModel;
-    Feature     feat;
-    int         from, to;
-    double      xFactor = this.computeScaleFactor();
+    FeatureIntervalIndex index;
+    FeatureGraphics      fg;
+    DRulerModel          rModel;
+    Feature              feat;
+    int[]                items;
+    int                  from, to, pos, rFrom, rTo;
+    double               xFactor = this.computeScaleFactor();
 
     rModel = this.getSequence().getRulerModel();
-    for(FeatureGraphics fg : features){
+    index = getClickIndex(rModel);
+    //ruler positions that may contain x, including MIN_WIDTH pix tolerance
+    if (xFactor>0d){
+      rFrom = toPosition(x - this.getLeftMargin() - MIN_WIDTH - 1, xFactor, -DECAL_COORD) - 1;
+      rTo = toPosition(x - this.getLeftMargin() + 1, xFactor, -DECAL_COORD) + 1;
+    }
+    else{
+      rFrom = Integer.MIN_VALUE;
+      rTo = Integer.MAX_VALUE;
+    }
+    //features may overlap: return the first one as ordered in the list
+    items = index.getOverlapping(rFrom, rTo);
+    for(pos=0;pos<items.length;pos++){
+      fg = features.get(items[pos]);
       if(fg.isVisible()==false)
         continue;
       feat = fg.getFeature();
@@ -309,7 +552,11 @@ public class BasicFeatureDrawingLane extends DrawingLaneBase implements FeatureD
     //super.paintLane(g, drawingArea);
     if (features==null || features.isEmpty())
       return;
-    drawFeatures(g, this.computeScaleFactor(), drawingArea);
+    double xFactor = this.computeScaleFactor();
+    if (isDensityMode(xFactor))
+      drawDensity(g, xFactor, drawingArea);
+    else
+      drawFeatures(g, xFactor, drawingArea);
   }
   /**
    * Implementation of SViewerSelectionListener interface used to highlight a particular
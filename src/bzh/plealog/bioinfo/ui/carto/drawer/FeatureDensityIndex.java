@@ -0,0 +1,195 @@
+/* Copyright (C) 2003-2019 Patrick G. Durand
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *     https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ */
+package bzh.plealog.bioinfo.ui.carto.drawer;
+
+/**
+ * This is a multi-resolution summary of features located on a sequence. The
+ * sequence is divided into bins; for each bin, the index stores the number of
+ * residues covered by features, so that bin value divided by bin size is the
+ * mean feature depth. Level zero has the smallest bins, then each level doubles
+ * the bin size of the previous one until a single bin covers the entire
+ * sequence.
+ *
+ * Usage: create the object, add all intervals, then call build().
+ *
+ * @author Patrick G. Durand
+ */
+public class FeatureDensityIndex {
+  private int      origin;
+  private int      length;
+  private int      baseBinSize;
+  // level zero, used while adding intervals
+  private long[]   partial;
+  private long[]   fullDiff;
+  // per level, then per bin
+  private long[][] coverage;
+  private double[] maxDepth;
+
+  /**maximum number of bins at level zero*/
+  public static final int MAX_BINS = 65536;
+
+  /**
+   * Constructor.
+   *
+   * @param origin first position of the sequence
+   * @param length size of the sequence
+   */
+  public FeatureDensityIndex(int origin, int length){
+    int bins;
+
+    this.origin = origin;
+    this.length = Math.max(1, length);
+    baseBinSize = Math.max(1, (this.length + MAX_BINS - 1) / MAX_BINS);
+    bins = (this.length + baseBinSize - 1) / baseBinSize;
+    partial = new long[bins];
+    fullDiff = new long[bins+1];
+  }
+
+  /**
+   * Adds an interval. Parts of the interval located outside the sequence are
+   * discarded.
+   */
+  public void addInterval(int from, int to){
+    int a, b, ba, bb;
+
+    a = Math.max(from, origin) - origin;
+    b = (int) Math.min((long) to - origin, (long) length - 1);
+    if (b<a){
+      return;
+    }
+    ba = a / baseBinSize;
+    bb = b / baseBinSize;
+    if (ba==bb){
+      partial[ba] += b - a + 1;
+    }
+    else{
+      partial[ba] += (ba+1) * baseBinSize - a;
+      partial[bb] += b - bb * baseBinSize + 1;
+      if (bb>ba+1){
+        fullDiff[ba+1]++;
+        fullDiff[bb]--;
+      }
+    }
+  }
+
+  /**
+   * Computes the bins of all levels. Intervals cannot be added after calling
+   * this method.
+   */
+  public void build(){
+    long[] cur, next;
+    long   full;
+    int    i, bins, levels, level, binSize;
+
+    bins = partial.length;
+    levels = 1;
+    for(i=bins;i>1;i=(i+1)/2){
+      levels++;
+    }
+    coverage = new long[levels][];
+    maxDepth = new double[levels];
+    cur = new long[bins];
+    full = 0;
+    for(i=0;i<bins;i++){
+      full += fullDiff[i];
+      cur[i] = partial[i] + full * baseBinSize;
+    }
+    partial = null;
+    fullDiff = null;
+    level = 0;
+    binSize = baseBinSize;
+    while(true){
+      coverage[level] = cur;
+      for(i=0;i<cur.length;i++){
+        maxDepth[level] = Math.max(maxDepth[level], (double) cur[i] / (double) getBinLength(level, i, binSize));
+      }
+      if (cur.length==1){
+        break;
+      }
+      next = new long[(cur.length+1)/2];
+      for(i=0;i<cur.length;i++){
+        next[i/2] += cur[i];
+      }
+      cur = next;
+      level++;
+      binSize *= 2;
+    }
+  }
+
+  private int getBinLength(int level, int bin, int binSize){
+    return (int) Math.min((long) binSize, (long) length - (long) bin * binSize);
+  }
+
+  /**
+   * Returns the number of levels.
+   */
+  public int getLevels(){
+    return coverage.length;
+  }
+
+  /**
+   * Returns the most appropriate level to draw the index using a sequence to
+   * pixel conversion factor, i.e. the first level having bins of at least one
+   * pixel wide.
+   */
+  public int getLevel(double xFactor){
+    int level, last;
+
+    last = coverage.length-1;
+    for(level=0;level<last;level++){
+      if (xFactor * (double) getBinSize(level) >= 1d){
+        break;
+      }
+    }
+    return level;
+  }
+
+  /**
+   * Returns the bin size of a level. Unit is residues.
+   */
+  public int getBinSize(int level){
+    return baseBinSize << level;
+  }
+
+  /**
+   * Returns the number of bins of a level.
+   */
+  public int getBins(int level){
+    return coverage[level].length;
+  }
+
+  /**
+   * Returns the mean feature depth of a bin.
+   */
+  public double getDepth(int level, int bin){
+    return (double) coverage[level][bin] / (double) getBinLength(level, bin, getBinSize(level));
+  }
+
+  /**
+   * Returns the highest mean feature depth of a level.
+   */
+  public double getMaxDepth(int level){
+    return maxDepth[level];
+  }
+
+  /**
+   * Returns the first position of the sequence.
+   */
+  public int getOrigin(){
+    return origin;
+  }
+}
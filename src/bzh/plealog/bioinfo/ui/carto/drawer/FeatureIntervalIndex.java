@@ -0,0 +1,215 @@
+/* Copyright (C) 2003-2019 Patrick G. Durand
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *     https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ */
+package bzh.plealog.bioinfo.ui.carto.drawer;
+
+import java.util.Arrays;
+
+/**
+ * This is a static index of intervals used to quickly locate the features
+ * overlapping a region. Intervals are sorted by start position; in addition,
+ * the index keeps for each position in that order the largest end seen so far.
+ * Since that value never decreases, locating the intervals overlapping
+ * [from..to] only requires two binary searches; then only the intervals within
+ * the resulting range have to be checked.
+ * <br><br>
+ * A single long interval (e.g. a "source" feature spanning the whole
+ * sequence) would make that range start at the first interval. So, intervals
+ * much longer than the median one are moved to a nested index, built the same
+ * way: each level only contains intervals of comparable lengths.
+ *
+ * @author Patrick G. Durand
+ */
+public class FeatureIntervalIndex {
+  // start and end of each interval, by item ID
+  private int[] _starts;
+  private int[] _ends;
+  // item IDs of this level sorted by start position
+  private int[] _items;
+  private int[] _sortedStarts;
+  private int[] _maxEnds;
+  // intervals much longer than those of this level; null if none
+  private FeatureIntervalIndex _longer;
+
+  // levels smaller than that are not split
+  private static final int MIN_SPLIT_SIZE = 64;
+  // an interval is a long one when it is that times longer than the median
+  private static final int LONG_FACTOR = 4;
+
+  /**
+   * Constructor.
+   *
+   * @param starts start position of each item. Index position in this array is
+   *          the item ID.
+   * @param ends end position of each item
+   */
+  public FeatureIntervalIndex(int[] starts, int[] ends) {
+    this(starts, ends, null);
+  }
+
+  private FeatureIntervalIndex(int[] starts, int[] ends, int[] ids) {
+    long[] packed;
+    int[] longer;
+    long threshold;
+    int i, size, id, max, nLonger;
+
+    _starts = starts;
+    _ends = ends;
+    if (ids == null) {
+      ids = new int[starts.length];
+      for (i = 0; i < ids.length; i++) {
+        ids[i] = i;
+      }
+    }
+    threshold = ids.length < MIN_SPLIT_SIZE ? Long.MAX_VALUE : LONG_FACTOR * Math.max(1L, getMedianLength(ids));
+    // start in high bits, item ID in low bits: a primitive sort gives the
+    // order, items having the same start stay in their natural order
+    packed = new long[ids.length];
+    longer = new int[ids.length];
+    size = nLonger = 0;
+    for (i = 0; i < ids.length; i++) {
+      id = ids[i];
+      if (getLength(id) > threshold) {
+        longer[nLonger++] = id;
+      } else {
+        packed[size++] = (((long) starts[id]) << 32) | (id & 0xFFFFFFFFL);
+      }
+    }
+    Arrays.sort(packed, 0, size);
+    _items = new int[size];
+    _sortedStarts = new int[size];
+    _maxEnds = new int[size];
+    max = Integer.MIN_VALUE;
+    for (i = 0; i < size; i++) {
+      id = (int) packed[i];
+      _items[i] = id;
+      _sortedStarts[i] = starts[id];
+      max = Math.max(max, ends[id]);
+      _maxEnds[i] = max;
+    }
+    if (nLonger != 0) {
+      _longer = new FeatureIntervalIndex(starts, ends, Arrays.copyOf(longer, nLonger));
+    }
+  }
+
+  private long getLength(int id) {
+    return (long) _ends[id] - (long) _starts[id];
+  }
+
+  private long getMedianLength(int[] ids) {
+    long[] lengths;
+    int i;
+
+    lengths = new long[ids.length];
+    for (i = 0; i < ids.length; i++) {
+      lengths[i] = getLength(ids[i]);
+    }
+    Arrays.sort(lengths);
+    return lengths[lengths.length / 2];
+  }
+
+  /**
+   * Returns the number of intervals.
+   */
+  public int size() {
+    return _starts.length;
+  }
+
+  /**
+   * Returns the start of an interval.
+   *
+   * @param item item ID
+   */
+  public int getStart(int item) {
+    return _starts[item];
+  }
+
+  /**
+   * Returns the end of an interval.
+   *
+   * @param item item ID
+   */
+  public int getEnd(int item) {
+    return _ends[item];
+  }
+
+  /**
+   * Returns the IDs of the intervals overlapping a region.
+   *
+   * @param from start of the region
+   * @param to end of the region
+   *
+   * @return item IDs sorted by ascending order, i.e. in the order of the
+   *         arrays passed in to the constructor
+   */
+  public int[] getOverlapping(int from, int to) {
+    FeatureIntervalIndex level;
+    int[] result;
+    int pos, lastPos, item, n;
+
+    result = new int[16];
+    n = 0;
+    for (level = this; level != null; level = level._longer) {
+      lastPos = level.last(to);
+      for (pos = level.first(from); pos <= lastPos; pos++) {
+        item = level._items[pos];
+        if (_ends[item] < from) {
+          continue;
+        }
+        if (n == result.length) {
+          result = Arrays.copyOf(result, 2 * n);
+        }
+        result[n++] = item;
+      }
+    }
+    Arrays.sort(result, 0, n);
+    return Arrays.copyOf(result, n);
+  }
+
+  /**
+   * Returns the first position, in start order, of an interval of this level
+   * that may end at or after a given position. Returns the level size if none.
+   */
+  private int first(int from) {
+    int lo = 0, hi = _maxEnds.length, mid;
+
+    while (lo < hi) {
+      mid = (lo + hi) >>> 1;
+      if (_maxEnds[mid] < from)
+        lo = mid + 1;
+      else
+        hi = mid;
+    }
+    return lo;
+  }
+
+  /**
+   * Returns the last position, in start order, of an interval of this level
+   * starting at or before a given position. Returns -1 if none.
+   */
+  private int last(int to) {
+    int lo = 0, hi = _sortedStarts.length, mid;
+
+    while (lo < hi) {
+      mid = (lo + hi) >>> 1;
+      if (_sortedStarts[mid] <= to)
+        lo = mid + 1;
+      else
+        hi = mid;
+    }
+    return lo - 1;
+  }
+}
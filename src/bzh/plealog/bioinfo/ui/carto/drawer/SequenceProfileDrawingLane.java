@@ -0,0 +1,341 @@
+/* Copyright (C) 2003-2019 Patrick G. Durand
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *     https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ */
+package bzh.plealog.bioinfo.ui.carto.drawer;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.EventListenerList;
+
+import com.plealog.genericapp.api.log.EZLogger;
+
+import bzh.plealog.bioinfo.api.data.sequence.DAlphabet;
+import bzh.plealog.bioinfo.api.data.sequence.DSequence;
+import bzh.plealog.bioinfo.ui.carto.event.SViewerSelectionEvent;
+
+/**
+ * This class is used to draw a sliding window profile of a sequence: GC content,
+ * GC skew or hydropathy (Kyte-Doolittle). The profile is computed once, for
+ * several window sizes; the window size is then selected according to the zoom
+ * level. Since the profile of a large sequence takes a while to compute, it is
+ * done in a background thread started at the first display: the lane only shows
+ * its base line until the profile is ready, then ChangeListeners are notified
+ * from the EDT so that the viewer can paint the lane again.
+ * 
+ * @author Patrick G. Durand
+ */
+public class SequenceProfileDrawingLane extends DrawingLaneBase {
+  /**Available types of profiles*/
+  public static enum PROFILE_TYPE {GC_CONTENT, GC_SKEW, HYDROPATHY};
+
+  private PROFILE_TYPE         profileType;
+  private int                  minWindow;
+  private SequenceProfileIndex profile;
+  private boolean              indexing;
+  private EventListenerList    listeners = new EventListenerList();
+  private Color                aboveClr = DEF_ABOVE_CLR;
+  private Color                belowClr = DEF_BELOW_CLR;
+
+  /**default size of the smallest window for nucleotide profiles*/
+  public static final int DEF_NUC_WINDOW = 100;
+  /**default size of the smallest window for protein profiles*/
+  public static final int DEF_PROT_WINDOW = 10;
+
+  private static final Color DEF_ABOVE_CLR = new Color(70, 110, 180);
+  private static final Color DEF_BELOW_CLR = new Color(220, 140, 50);
+  private static final Color BASE_LINE_CLR = Color.GRAY;
+
+  //minimum distance between two windows. Unit is pixels.
+  private static final double MIN_STEP_PIXELS = 2d;
+
+  private static final String KD_RESIDUES = "ARNDCQEGHILKMFPSTWYV";
+  private static final double[] KD_VALUES = {
+    1.8, -4.5, -3.5, -3.5, 2.5, -3.5, -3.5, -0.4, -3.2, 4.5,
+    3.8, -3.9, 1.9, 2.8, -1.6, -0.8, -0.7, -0.9, -1.3, 4.2};
+
+  /**
+   * Standard constructor. Uses GC content for nucleotide sequences and hydropathy
+   * for protein sequences.
+   * 
+   * @param seq the sequence.
+   */
+  public SequenceProfileDrawingLane(DSequence seq){
+    this(seq, seq.getAlphabet().getType()==DAlphabet.PROTEIN_ALPHABET ? 
+        PROFILE_TYPE.HYDROPATHY : PROFILE_TYPE.GC_CONTENT);
+  }
+
+  /**
+   * Standard constructor.
+   * 
+   * @param seq the sequence.
+   * @param type the profile to display.
+   */
+  public SequenceProfileDrawingLane(DSequence seq, PROFILE_TYPE type){
+    this(seq, type, type==PROFILE_TYPE.HYDROPATHY ? DEF_PROT_WINDOW : DEF_NUC_WINDOW);
+  }
+
+  /**
+   * Standard constructor.
+   * 
+   * @param seq the sequence.
+   * @param type the profile to display.
+   * @param minWindow size of the smallest window. Unit is residues.
+   */
+  public SequenceProfileDrawingLane(DSequence seq, PROFILE_TYPE type, int minWindow){
+    super(seq);
+    profileType = type;
+    this.minWindow = Math.max(2, minWindow);
+    setPreferredSize(new Dimension(800, 40));
+    setTopMargin(2);
+    setBottomMargin(2);
+    switch(type){
+      case GC_SKEW:
+        setLeftLabel("GC skew");
+        break;
+      case HYDROPATHY:
+        setLeftLabel("Hydropathy");
+        break;
+      case GC_CONTENT:
+      default:
+        setLeftLabel("GC %");
+        break;
+    }
+  }
+
+  public PROFILE_TYPE getProfileType() {
+    return profileType;
+  }
+
+  /**
+   * Sets the colors used to draw values located above and below the base line.
+   */
+  public void setColors(Color above, Color below){
+    aboveClr = above;
+    belowClr = below;
+  }
+
+  /**
+   * Adds a listener notified from the EDT when the profile is ready to be
+   * displayed.
+   */
+  public void addChangeListener(ChangeListener l){
+    listeners.add(ChangeListener.class, l);
+  }
+
+  /**
+   * Removes a listener.
+   */
+  public void removeChangeListener(ChangeListener l){
+    listeners.remove(ChangeListener.class, l);
+  }
+
+  private void fireProfileReady(){
+    Object[]    list;
+    ChangeEvent event;
+
+    list = listeners.getListenerList();
+    event = new ChangeEvent(this);
+    for (int i = list.length - 2; i >= 0; i -= 2) {
+      if (list[i]==ChangeListener.class) {
+        ((ChangeListener)list[i+1]).stateChanged(event);
+      }
+    }
+  }
+
+  /**
+   * Figures out whether or not the profile has been computed.
+   */
+  public synchronized boolean isProfileReady(){
+    return profile!=null;
+  }
+
+  /**
+   * Returns the profile. Returns null if it is not yet computed: the first call
+   * starts its computation in the background.
+   */
+  private synchronized SequenceProfileIndex getProfile(){
+    if (profile==null && !indexing){
+      indexing = true;
+      new ProfileBuilder().start();
+    }
+    return profile;
+  }
+
+  /**
+   * Called when the profile has been computed.
+   */
+  private void profileReady(SequenceProfileIndex index){
+    synchronized(this){
+      profile = index;
+      indexing = false;
+    }
+    SwingUtilities.invokeLater(new Runnable(){
+      public void run(){
+        fireProfileReady();
+      }
+    });
+  }
+
+  /**
+   * Computes the profile.
+   */
+  private SequenceProfileIndex createProfile(){
+    double[] num, den;
+    char     ch;
+    int      i;
+
+    num = new double[128];
+    den = new double[128];
+    switch(profileType){
+      case GC_SKEW:
+        setWeights(num, 'G', 1d);
+        setWeights(num, 'C', -1d);
+        setWeights(den, 'G', 1d);
+        setWeights(den, 'C', 1d);
+        break;
+      case HYDROPATHY:
+        for(i=0;i<KD_RESIDUES.length();i++){
+          ch = KD_RESIDUES.charAt(i);
+          setWeights(num, ch, KD_VALUES[i]);
+          setWeights(den, ch, 1d);
+        }
+        break;
+      case GC_CONTENT:
+      default:
+        setWeights(num, 'G', 1d);
+        setWeights(num, 'C', 1d);
+        setWeights(num, 'S', 1d);
+        for(char c : "ACGTUSW".toCharArray()){
+          setWeights(den, c, 1d);
+        }
+        break;
+    }
+    return new SequenceProfileIndex(this.getSequence(), num, den, minWindow);
+  }
+
+  /**
+   * This class computes the profile.
+   */
+  private class ProfileBuilder extends Thread{
+    private ProfileBuilder(){
+      super("SequenceProfileDrawingLane-index");
+      setDaemon(true);
+    }
+    public void run(){
+      SequenceProfileIndex index;
+
+      try{
+        index = createProfile();
+      }
+      catch(Exception ex){
+        EZLogger.warn("unable to compute sequence profile: "+ex);
+        return;
+      }
+      profileReady(index);
+    }
+  }
+
+  private void setWeights(double[] weights, char ch, double value){
+    weights[ch] = value;
+    weights[Character.toLowerCase(ch)] = value;
+  }
+
+  /**
+   * Returns the range of values and the base line of the profile.
+   */
+  private double[] getRange(){
+    switch(profileType){
+      case GC_SKEW:
+        return new double[]{-1d, 1d, 0d};
+      case HYDROPATHY:
+        return new double[]{-4.5d, 4.5d, 0d};
+      case GC_CONTENT:
+      default:
+        return new double[]{0d, 1d, 0.5d};
+    }
+  }
+
+  /**
+   * Draws the profile as a histogram centered on the base line. Each window is
+   * drawn over its central part, so that bars do not overlap.
+   */
+  private void drawProfile(Graphics2D g, double xFactor, Rectangle drawingArea){
+    SequenceProfileIndex index;
+    double[]             range;
+    double               value, scale;
+    long                 center;
+    int                  level, step, window, lastWindow, x1, x2, y, yBase, top, height;
+
+    index = getProfile();
+    range = getRange();
+    top = drawingArea.y+this.getTopMargin();
+    height = drawingArea.height-(this.getTopMargin()+this.getBottomMargin());
+    scale = (double) height / (range[1]-range[0]);
+    yBase = top + height - (int) Math.round((range[2]-range[0]) * scale);
+    if (index==null){
+      //not yet computed: only draw the base line
+      g.setColor(BASE_LINE_CLR);
+      g.drawLine(this.getLeftMargin(), yBase, 
+          this.getLeftMargin() + (int)(xFactor * (double) this.getSequence().size()), yBase);
+      return;
+    }
+    level = index.getLevel(xFactor, MIN_STEP_PIXELS);
+    step = index.getStep(level);
+    window = Math.max(0, (int) ((drawingArea.x - this.getLeftMargin()) / (xFactor * step)) - 2);
+    lastWindow = Math.min(index.getWindows(level)-1, 
+        (int) Math.min(Integer.MAX_VALUE, (drawingArea.x + drawingArea.width - this.getLeftMargin()) / (xFactor * step)) + 1);
+    for(;window<=lastWindow;window++){
+      value = index.getValue(level, window);
+      if (Double.isNaN(value))
+        continue;
+      value = Math.max(range[0], Math.min(range[1], value));
+      center = (long) index.getWindowStart(level, window) + step;
+      x1 = this.getLeftMargin() + (int)(xFactor * (double) (center - step/2));
+      x2 = this.getLeftMargin() + (int)(xFactor * (double) Math.min(center + (step+1)/2, index.getLength()));
+      if (x2<=x1)
+        continue;
+      y = top + height - (int) Math.round((value-range[0]) * scale);
+      if (y<yBase){
+        g.setColor(aboveClr);
+        g.fillRect(x1, y, x2-x1, yBase-y);
+      }
+      else if (y>yBase){
+        g.setColor(belowClr);
+        g.fillRect(x1, yBase, x2-x1, y-yBase);
+      }
+    }
+    g.setColor(BASE_LINE_CLR);
+    g.drawLine(this.getLeftMargin(), yBase, 
+        this.getLeftMargin() + (int)(xFactor * (double) index.getLength()), yBase);
+  }
+
+  public void paintLane(Graphics2D g, Rectangle drawingArea) {
+    double xFactor;
+
+    super.paintLane(g, drawingArea);
+    xFactor = this.computeScaleFactor();
+    drawGrid(g, xFactor, drawingArea);
+    drawProfile(g, xFactor, drawingArea);
+  }
+  public void objectSelected(SViewerSelectionEvent event){
+  }
+}
@@ -0,0 +1,183 @@
+/* Copyright (C) 2003-2019 Patrick G. Durand
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *     https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ */
+package bzh.plealog.bioinfo.ui.carto.drawer;
+
+import bzh.plealog.bioinfo.api.data.sequence.DSequence;
+
+/**
+ * This is a multi-resolution sliding window profile of a sequence. Each residue
+ * is given two weights: the value of a window is the sum of the first weights
+ * divided by the sum of the second ones. As an example, GC content uses 1 for G
+ * and C as first weight, and 1 for A, C, G and T as second weight.
+ *
+ * Level zero uses windows of minWindow residues, then each level doubles the
+ * window size of the previous one until a single window covers the entire
+ * sequence. Windows of a level overlap by half of their size.
+ *
+ * The sequence is read once: residue weights are summed into bins of half the
+ * smallest window, then windows of all levels are computed by rolling sums
+ * over these bins.
+ *
+ * @author Patrick G. Durand
+ */
+public class SequenceProfileIndex {
+  private int       length;
+  private int       binSize;
+  // per level, then per window
+  private float[][] values;
+
+  /**
+   * Constructor. Computes the profile.
+   *
+   * @param seq the sequence
+   * @param numWeights first weight of each residue, indexed by residue letter.
+   * Upper case and lower case letters have to be set.
+   * @param denWeights second weight of each residue, indexed by residue letter.
+   * @param minWindow size of the smallest window. Unit is residues.
+   */
+  public SequenceProfileIndex(DSequence seq, double[] numWeights, double[] denWeights, int minWindow){
+    double[] numBins, denBins;
+    char     ch;
+    int      i, bin, bins, levels, level, size;
+
+    length = Math.max(1, seq.size());
+    binSize = Math.max(1, minWindow/2);
+    bins = (length + binSize - 1) / binSize;
+    numBins = new double[bins];
+    denBins = new double[bins];
+    size = seq.size();
+    for(i=0;i<size;i++){
+      ch = seq.getSymbol(i).getChar();
+      if (ch>=numWeights.length)
+        continue;
+      bin = i / binSize;
+      numBins[bin] += numWeights[ch];
+      denBins[bin] += denWeights[ch];
+    }
+    levels = 1;
+    while((2L*binSize<<(levels-1))<length){
+      levels++;
+    }
+    values = new float[levels][];
+    for(level=0;level<levels;level++){
+      values[level] = computeLevel(numBins, denBins, 1<<level);
+    }
+  }
+
+  /**
+   * Computes the windows of a level using rolling sums over bins.
+   *
+   * @param step number of bins between two windows. A window covers two steps.
+   */
+  private float[] computeLevel(double[] numBins, double[] denBins, int step){
+    float[] vals;
+    double  num, den;
+    int     i, j, n, bins, end;
+
+    bins = numBins.length;
+    n = bins<=2*step ? 1 : (bins - 2*step + step - 1) / step + 1;
+    vals = new float[n];
+    num = den = 0;
+    end = Math.min(bins, 2*step);
+    for(i=0;i<end;i++){
+      num += numBins[i];
+      den += denBins[i];
+    }
+    for(j=0;j<n;j++){
+      vals[j] = den!=0 ? (float) (num / den) : Float.NaN;
+      //slide the window: drop one step, add the next one
+      for(i=j*step;i<(j+1)*step && i<bins;i++){
+        num -= numBins[i];
+        den -= denBins[i];
+      }
+      for(i=end;i<end+step && i<bins;i++){
+        num += numBins[i];
+        den += denBins[i];
+      }
+      end += step;
+    }
+    return vals;
+  }
+
+  /**
+   * Returns the number of levels.
+   */
+  public int getLevels(){
+    return values.length;
+  }
+
+  /**
+   * Returns the most appropriate level to draw the profile using a sequence to
+   * pixel conversion factor, i.e. the first level having windows separated by at
+   * least minPixels pixels.
+   */
+  public int getLevel(double xFactor, double minPixels){
+    int level, last;
+
+    last = values.length-1;
+    for(level=0;level<last;level++){
+      if (xFactor * (double) getStep(level) >= minPixels){
+        break;
+      }
+    }
+    return level;
+  }
+
+  /**
+   * Returns the window size of a level. Unit is residues.
+   */
+  public int getWindowSize(int level){
+    return 2*getStep(level);
+  }
+
+  /**
+   * Returns the distance between two consecutive windows of a level. Unit is
+   * residues.
+   */
+  public int getStep(int level){
+    return binSize << level;
+  }
+
+  /**
+   * Returns the number of windows of a level.
+   */
+  public int getWindows(int level){
+    return values[level].length;
+  }
+
+  /**
+   * Returns the first position of a window. Zero-based absolute value.
+   */
+  public int getWindowStart(int level, int window){
+    return window * getStep(level);
+  }
+
+  /**
+   * Returns the value of a window. Returns NaN if the window does not contain
+   * any residue having a second weight.
+   */
+  public float getValue(int level, int window){
+    return values[level][window];
+  }
+
+  /**
+   * Returns the size of the sequence.
+   */
+  public int getLength(){
+    return length;
+  }
+}
@@ -29,18 +29,33 @@ import bzh.plealog.bioinfo.ui.carto.data.FGraphics;
  * @author Patrick G. Durand
  */
 public class FeatureMeterBoxPainter extends FeatureBoxPainter {
-  private MeterData data;
-  private double    fract;
+  //painter is shared by lanes painted concurrently: state is stored per thread
+  private ThreadLocal<MeterState> state = new ThreadLocal<MeterState>();
+
+  private static class MeterState{
+    private MeterData data;
+    private double    fract;
+  }
+
+  private MeterState getState(){
+    MeterState ms = state.get();
+    if (ms==null){
+      ms = new MeterState();
+      state.set(ms);
+    }
+    return ms;
+  }
 
   public void paintFeature(Graphics2D g, Rectangle box, FGraphics fg, int strand) {
-    if (data==null){
+    MeterState ms = getState();
+    if (ms.data==null){
       super.paintFeature(g, box, fg, strand);
       return;
     }
     Color clr;
     int   barHeight;
 
-    barHeight = (int) ((double) box.height * fract);
+    barHeight = (int) ((double) box.height * ms.fract);
     if (barHeight>box.height)
       barHeight = box.height;
     clr = g.getColor();
@@ -57,18 +72,19 @@ public class FeatureMeterBoxPainter extends FeatureBoxPainter {
   }
 
   public void setUserData(Object data) {
+    MeterState ms = getState();
     if (data instanceof MeterData){
-      this.data = (MeterData) data;
-      fract = (double) this.data.getValue() / (double) this.data.getMaximum();
+      ms.data = (MeterData) data;
+      ms.fract = (double) ms.data.getValue() / (double) ms.data.getMaximum();
     }
     else{
-      this.data = null;
-      fract = 1.0f;
+      ms.data = null;
+      ms.fract = 1.0f;
     }
   }
 
   public Object getUserData() {
-    return data;
+    return getState().data;
   }
 
 }
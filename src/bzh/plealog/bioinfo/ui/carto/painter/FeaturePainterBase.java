@@ -17,9 +17,15 @@
 package bzh.plealog.bioinfo.ui.carto.painter;
 
 
+/**
+ * Base class of painters. User data is stored per thread, so that a same
+ * painter instance can be used by several threads to paint drawing lanes.
+ * 
+ * @author Patrick G. Durand
+ */
 public abstract class FeaturePainterBase implements FeaturePainter {
 
-  private Object _userData;
+  private ThreadLocal<Object> _userData = new ThreadLocal<Object>();
 
 
   public String toString(){
@@ -27,12 +33,12 @@ public abstract class FeaturePainterBase implements FeaturePainter {
   }
 
   public void setUserData(Object userData) {
-    _userData = userData;
+    _userData.set(userData);
   }
 
 
   public Object getUserData() {
-    return _userData;
+    return _userData.get();
   }
 
 }
@@ -33,6 +33,7 @@ import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTable;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
 import javax.swing.table.AbstractTableModel;
 import javax.swing.table.JTableHeader;
 import javax.swing.table.TableCellRenderer;
@@ -53,9 +54,13 @@ import bzh.plealog.bioinfo.ui.sequence.event.DSequenceSelectionListener;
 import bzh.plealog.bioinfo.ui.util.JPercentLabel;
 import bzh.plealog.bioinfo.ui.util.ResultTableHeaderPanel;
 
+import com.plealog.genericapp.api.log.EZLogger;
+
 /**
  * This class can be used to display the sequence composition. It uses a dual table to 
  * display both the composition of the full sequence and from a selected region.
+ * Selection compositions rely on a DSequenceCompositionIndex built in the background
+ * once per sequence, so that they can be updated while the user drags a selection.
  * 
  * @author Patrick G. Durand
  */
@@ -66,6 +71,12 @@ public class AlphabetCounterDualViewer extends JPanel implements DSequenceSelect
   private JScrollPane                   _mainScroller;
   private PercentRenderer               _pctRenderer;
   private boolean                       _displayEmptyRow;
+  private DSequenceCompositionIndex     _compIndex;
+  private DSequence                     _indexedSeq;
+  private DSequenceSelectionEvent       _pendingEvent;
+  private DSequenceSelectionEvent       _lastEvent;
+  // used to discard obsolete indexes
+  private int                           _indexGeneration;
 
   private static final String COUNTER_COLUMN_HDR[] = {
     "Count", 
@@ -76,6 +87,9 @@ public class AlphabetCounterDualViewer extends JPanel implements DSequenceSelect
   private static final String COUNTERH_COLUMN_HDR = "Symbol";
   private static final DecimalFormat PCT_FORMATTER = new DecimalFormat("##0.00");
 
+  //largest selection whose composition is directly computed while the index is not ready
+  private static final int DIRECT_COMPUTATION_LIMIT = 10000;
+
   /**
    * Default constructor.
    */
@@ -138,6 +152,85 @@ public class AlphabetCounterDualViewer extends JPanel implements DSequenceSelect
     _alphViewer.setModel(new AlphabetCounterTableModel(rowHeaderVals));
     _rowHeaderTable.setModel(new AlphabetCounterRowHeaderTableModel(rowHeaderVals));
   }
+  /**
+   * Sets the sequence whose composition has to be displayed. The composition of the
+   * full sequence is computed in the background. Pass null to reset the viewer.
+   */
+  public void setSequence(DSequence sequence){
+    _pendingEvent = null;
+    _lastEvent = null;
+    setFullSeqAlphabetCounter(null);
+    if (sequence==null){
+      _indexedSeq = null;
+      _compIndex = null;
+      _indexGeneration++;
+      return;
+    }
+    startIndexing(sequence, true);
+  }
+  /**
+   * Starts the creation of the composition index of a sequence.
+   */
+  private void startIndexing(DSequence sequence, boolean updateFullSeq){
+    _indexedSeq = sequence;
+    _compIndex = null;
+    _indexGeneration++;
+    new IndexBuilder(sequence, updateFullSeq, _indexGeneration).start();
+  }
+  /**
+   * Called from the EDT when an index is ready.
+   */
+  private void indexReady(IndexBuilder builder, DSequenceCompositionIndex index){
+    DSequenceSelectionEvent event;
+
+    if (builder.generation!=_indexGeneration){
+      return;
+    }
+    _compIndex = index;
+    event = _pendingEvent;
+    if (builder.updateFullSeq){
+      setFullSeqAlphabetCounter(index.getComposition(0, index.getSequence().size()-1));
+      //a new table model has been set: restore the selection composition
+      if (event==null){
+        event = _lastEvent;
+      }
+    }
+    if (event!=null){
+      selectionChanged(event);
+    }
+  }
+  /**
+   * This class builds the composition index of a sequence.
+   */
+  private class IndexBuilder extends Thread{
+    private DSequence sequence;
+    private boolean   updateFullSeq;
+    private int       generation;
+
+    private IndexBuilder(DSequence sequence, boolean updateFullSeq, int generation){
+      super("AlphabetCounterDualViewer-index");
+      setDaemon(true);
+      this.sequence = sequence;
+      this.updateFullSeq = updateFullSeq;
+      this.generation = generation;
+    }
+    public void run(){
+      final DSequenceCompositionIndex index;
+
+      try{
+        index = new DSequenceCompositionIndex(sequence);
+      }
+      catch(Exception ex){
+        EZLogger.warn("unable to index sequence composition: "+ex);
+        return;
+      }
+      SwingUtilities.invokeLater(new Runnable(){
+        public void run(){
+          indexReady(IndexBuilder.this, index);
+        }
+      });
+    }
+  }
   /**
    * Figures out if the viewer has to display alphabet symbols not present in the
    * sequence.
@@ -463,20 +556,51 @@ public class AlphabetCounterDualViewer extends JPanel implements DSequenceSelect
     int             from, to;
 
     fullSeq = event.getEntireSequence();
+    if (fullSeq!=null && fullSeq!=_indexedSeq){
+      startIndexing(fullSeq, false);
+    }
+    _pendingEvent = null;
+    _lastEvent = event;
     if (event.getSelectionType()==DSequenceSelectionEvent.SIMPLE_RANGE){
       from = event.getSelFrom();
       to = event.getSelTo();
       if (from!=-1 && to!=-1 && fullSeq!=null){
-        alphC = StatUtils.computeComposition(fullSeq, from, to);
+        if (_compIndex!=null){
+          alphC = _compIndex.getComposition(from, to);
+        }
+        else if (to-from<DIRECT_COMPUTATION_LIMIT){
+          alphC = StatUtils.computeComposition(fullSeq, from, to);
+        }
+        else{
+          _pendingEvent = event;
+          return;
+        }
       }
     }
     else{
       locs = event.getLocs();
       if (locs!=null && fullSeq!=null){
-        alphC = StatUtils.computeComposition(fullSeq, locs);
+        if (_compIndex!=null){
+          alphC = _compIndex.getComposition(locs);
+        }
+        else if (getSize(locs)<DIRECT_COMPUTATION_LIMIT){
+          alphC = StatUtils.computeComposition(fullSeq, locs);
+        }
+        else{
+          _pendingEvent = event;
+          return;
+        }
       }
     }
     ((AlphabetCounterTableModel)_alphViewer.getModel()).setSelectedSeqModel(getDataModel(alphC));
     _alphViewer.repaint();
   }
+  private long getSize(List<DLocation> locs){
+    long size = 0;
+
+    for(DLocation loc : locs){
+      size += loc.getTo()-loc.getFrom()+1;
+    }
+    return size;
+  }
 }
@@ -0,0 +1,334 @@
+/* Copyright (C) 2003-2019 Patrick G. Durand
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *     https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ */
+package bzh.plealog.bioinfo.ui.sequence.basic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import bzh.plealog.bioinfo.api.data.feature.Feature;
+import bzh.plealog.bioinfo.api.data.sequence.DAlphabet;
+
+/**
+ * This class locates a set of motifs on a sequence in a single pass using an
+ * Aho-Corasick automaton: scanning time is linear in sequence length whatever
+ * the number of motifs. On nucleotide sequences, the reverse complement of each
+ * motif can be added to the automaton so that both strands are scanned during
+ * that same pass.
+ *
+ * Motifs are only made of letters and are searched case insensitive; T and U
+ * are considered as equivalent. Ambiguity codes are matched literally.
+ * Matches are reported using zero-based absolute coordinates and may overlap.
+ *
+ * @author Patrick G. Durand
+ */
+public class DMultiPatternSearchEngine {
+  private String[] _motifs;
+  // automaton: _next[node*ALPHA_SIZE+letter] is the next node
+  private int[]    _next;
+  // per node: motifs ending at that node, then closest suffix node having motifs
+  private int[][]  _outputs;
+  private int[]    _dictLink;
+  // per entry (motif or reverse complement of a motif)
+  private int[]    _entryMotif;
+  private int[]    _entryStrand;
+  private int[]    _entryLength;
+  private int[]    _charToLetter;
+
+  private static final int ALPHA_SIZE = 26;
+  private static final int[] NO_OUTPUT = new int[0];
+
+  // number of positions scanned between two checks of thread interruption
+  private static final int CHECK_INTERRUPT = 65536;
+
+  private static final String COMPLEMENT_FROM = "ACGTURYKMBVDHSWN";
+  private static final String COMPLEMENT_TO   = "TGCAAYRMKVBHDSWN";
+
+  /**
+   * Constructor.
+   *
+   * @param motifs the motifs to search for
+   * @param bothStrands if true, motifs are also searched on the reverse strand.
+   * Only used with nucleotide sequences.
+   * @param alphabetType one of DAlphabet.XXX_ALPHABET
+   *
+   * @throws IllegalArgumentException if a motif is empty or contains characters
+   * other than letters
+   */
+  public DMultiPatternSearchEngine(List<String> motifs, boolean bothStrands, int alphabetType){
+    ArrayList<String>  entries;
+    ArrayList<Integer> strands, motifIds;
+    String             motif, revComp;
+    boolean            nucleotide;
+    int                i, size;
+
+    nucleotide = (alphabetType==DAlphabet.DNA_ALPHABET || alphabetType==DAlphabet.RNA_ALPHABET);
+    bothStrands &= nucleotide;
+    _charToLetter = new int[128];
+    Arrays.fill(_charToLetter, -1);
+    for(i=0;i<ALPHA_SIZE;i++){
+      _charToLetter['A'+i] = i;
+      _charToLetter['a'+i] = i;
+    }
+    if (nucleotide){
+      _charToLetter['U'] = _charToLetter['T'];
+      _charToLetter['u'] = _charToLetter['T'];
+    }
+    size = motifs.size();
+    _motifs = new String[size];
+    entries = new ArrayList<>();
+    strands = new ArrayList<>();
+    motifIds = new ArrayList<>();
+    for(i=0;i<size;i++){
+      motif = motifs.get(i);
+      if (!DPatternSearchEngine.isSimpleMotif(motif)){
+        throw new IllegalArgumentException("Invalid motif: "+motif);
+      }
+      _motifs[i] = motif;
+      motif = motif.toUpperCase();
+      entries.add(motif);
+      strands.add(Feature.PLUS_STRAND);
+      motifIds.add(i);
+      if (bothStrands){
+        revComp = getReverseComplement(motif);
+        //palindromic motifs are only reported once
+        if (!isSameMotif(revComp, motif)){
+          entries.add(revComp);
+          strands.add(Feature.MINUS_STRAND);
+          motifIds.add(i);
+        }
+      }
+    }
+    size = entries.size();
+    _entryMotif = new int[size];
+    _entryStrand = new int[size];
+    _entryLength = new int[size];
+    for(i=0;i<size;i++){
+      _entryMotif[i] = motifIds.get(i);
+      _entryStrand[i] = strands.get(i);
+      _entryLength[i] = entries.get(i).length();
+    }
+    buildAutomaton(entries);
+  }
+
+  private String getReverseComplement(String motif){
+    StringBuilder buf;
+    char          ch;
+    int           i, idx;
+
+    buf = new StringBuilder(motif.length());
+    for(i=motif.length()-1;i>=0;i--){
+      ch = motif.charAt(i);
+      idx = COMPLEMENT_FROM.indexOf(ch);
+      buf.append(idx==-1 ? ch : COMPLEMENT_TO.charAt(idx));
+    }
+    return buf.toString();
+  }
+
+  private boolean isSameMotif(String m1, String m2){
+    int i, size;
+
+    size = m1.length();
+    for(i=0;i<size;i++){
+      if (_charToLetter[m1.charAt(i)]!=_charToLetter[m2.charAt(i)])
+        return false;
+    }
+    return true;
+  }
+
+  private void buildAutomaton(List<String> entries){
+    ArrayList<ArrayList<Integer>> outputs;
+    String                        entry;
+    int[]                         fail, queue;
+    int                           i, j, c, node, child, nodes, maxNodes, head, tail;
+
+    maxNodes = 1;
+    for(String e : entries){
+      maxNodes += e.length();
+    }
+    _next = new int[maxNodes*ALPHA_SIZE];
+    Arrays.fill(_next, -1);
+    outputs = new ArrayList<>();
+    outputs.add(null);
+    nodes = 1;
+    //trie
+    for(i=0;i<entries.size();i++){
+      entry = entries.get(i);
+      node = 0;
+      for(j=0;j<entry.length();j++){
+        c = _charToLetter[entry.charAt(j)];
+        child = _next[node*ALPHA_SIZE+c];
+        if (child==-1){
+          child = nodes++;
+          _next[node*ALPHA_SIZE+c] = child;
+          outputs.add(null);
+        }
+        node = child;
+      }
+      if (outputs.get(node)==null){
+        outputs.set(node, new ArrayList<Integer>());
+      }
+      outputs.get(node).add(i);
+    }
+    _outputs = new int[nodes][];
+    for(i=0;i<nodes;i++){
+      _outputs[i] = toArray(outputs.get(i));
+    }
+    //failure links, turned into a complete transition table
+    fail = new int[nodes];
+    _dictLink = new int[nodes];
+    queue = new int[nodes];
+    head = tail = 0;
+    _dictLink[0] = -1;
+    for(c=0;c<ALPHA_SIZE;c++){
+      child = _next[c];
+      if (child==-1){
+        _next[c] = 0;
+      }
+      else{
+        fail[child] = 0;
+        _dictLink[child] = -1;
+        queue[tail++] = child;
+      }
+    }
+    while(head<tail){
+      node = queue[head++];
+      for(c=0;c<ALPHA_SIZE;c++){
+        child = _next[node*ALPHA_SIZE+c];
+        if (child==-1){
+          _next[node*ALPHA_SIZE+c] = _next[fail[node]*ALPHA_SIZE+c];
+        }
+        else{
+          fail[child] = _next[fail[node]*ALPHA_SIZE+c];
+          _dictLink[child] = _outputs[fail[child]].length!=0 ? fail[child] : _dictLink[fail[child]];
+          queue[tail++] = child;
+        }
+      }
+    }
+    if (nodes*ALPHA_SIZE<_next.length){
+      _next = Arrays.copyOf(_next, nodes*ALPHA_SIZE);
+    }
+  }
+
+  private int[] toArray(List<Integer> values){
+    int[] array;
+    int   i;
+
+    if (values==null)
+      return NO_OUTPUT;
+    array = new int[values.size()];
+    for(i=0;i<array.length;i++){
+      array[i] = values.get(i);
+    }
+    return array;
+  }
+
+  /**
+   * Returns the number of motifs.
+   */
+  public int getMotifs(){
+    return _motifs.length;
+  }
+
+  /**
+   * Returns a motif.
+   */
+  public String getMotif(int idx){
+    return _motifs[idx];
+  }
+
+  /**
+   * Returns all the matches of the motifs, sorted by end position. Search stops
+   * when maxHits matches have been found or when the calling thread has been
+   * interrupted.
+   *
+   * @param seq the sequence
+   * @param maxHits maximum number of matches to report
+   */
+  public List<Hit> findAll(CharSequence seq, int maxHits){
+    ArrayList<Hit> hits;
+    Thread         thread;
+    char           ch;
+    int            i, size, node, letter, out;
+
+    hits = new ArrayList<>();
+    thread = Thread.currentThread();
+    size = seq.length();
+    node = 0;
+    for(i=0;i<size;i++){
+      ch = seq.charAt(i);
+      letter = ch<128 ? _charToLetter[ch] : -1;
+      if (letter==-1){
+        node = 0;
+        continue;
+      }
+      node = _next[node*ALPHA_SIZE+letter];
+      for(out=node;out!=-1;out=_dictLink[out]){
+        for(int entry : _outputs[out]){
+          hits.add(new Hit(_entryMotif[entry], i-_entryLength[entry]+1, i, _entryStrand[entry]));
+          if (hits.size()>=maxHits)
+            return hits;
+        }
+      }
+      if ((i % CHECK_INTERRUPT)==0 && thread.isInterrupted()){
+        break;
+      }
+    }
+    return hits;
+  }
+
+  /**
+   * This class describes a match of a motif on a sequence.
+   */
+  public static class Hit{
+    private int motif;
+    private int from;
+    private int to;
+    private int strand;
+
+    private Hit(int motif, int from, int to, int strand){
+      this.motif = motif;
+      this.from = from;
+      this.to = to;
+      this.strand = strand;
+    }
+    /**
+     * Returns the index of the matched motif.
+     */
+    public int getMotif(){
+      return motif;
+    }
+    /**
+     * Returns the first position of the match. Value is zero-based and absolute.
+     */
+    public int getFrom(){
+      return from;
+    }
+    /**
+     * Returns the last position of the match. Value is zero-based and absolute.
+     */
+    public int getTo(){
+      return to;
+    }
+    /**
+     * Returns one of Feature.XXX_STRAND.
+     */
+    public int getStrand(){
+      return strand;
+    }
+  }
+}
@@ -0,0 +1,280 @@
+/* Copyright (C) 2003-2019 Patrick G. Durand
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *     https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ */
+package bzh.plealog.bioinfo.ui.sequence.basic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import bzh.plealog.bioinfo.api.data.sequence.DAlphabet;
+import bzh.plealog.bioinfo.api.data.sequence.DLocation;
+
+/**
+ * This class locates a pattern on a sequence. Motifs only made of letters are
+ * searched using a bit-parallel algorithm (Shift-And); other patterns are
+ * considered as regular expressions. Searches are always case insensitive.
+ *
+ * Motifs can also be considered as degenerated: in such a case, IUPAC
+ * ambiguity codes (e.g. N, R, Y for nucleotides; X, B, Z for amino acids)
+ * contained in the motif match all the residues they stand for.
+ *
+ * Sequences are accessed through CharSequence: use DSequenceCharSequence to
+ * avoid a copy of the sequence. Matches are reported using zero-based absolute
+ * coordinates; DLocation.getTo() is the last position of the match. Matches
+ * may overlap.
+ *
+ * @author Patrick G. Durand
+ */
+public class DPatternSearchEngine {
+  private String  _pattern;
+  // regular expression matcher
+  private Pattern _regex;
+  // bit-parallel matcher: bit i of a mask is set when a char matches the
+  // motif at position i
+  private long[]  _masks;
+  private long    _matchBit;
+  private int     _patLength;
+
+  /**longest motif handled by the bit-parallel algorithm*/
+  public static final int MAX_BIT_PARALLEL_LENGTH = 64;
+
+  // number of positions scanned between two checks of thread interruption
+  private static final int CHECK_INTERRUPT = 65536;
+
+  private static final String[][] NUC_CODES = {
+    {"R","AG"}, {"Y","CTU"}, {"S","CG"}, {"W","ATU"}, {"K","GTU"}, {"M","AC"},
+    {"B","CGTU"}, {"D","AGTU"}, {"H","ACTU"}, {"V","ACG"}, {"N","ACGTU"},
+    {"T","TU"}, {"U","TU"}};
+  private static final String[][] PROT_CODES = {
+    {"B","DN"}, {"Z","EQ"}, {"J","IL"}, {"X","ABCDEFGHIJKLMNOPQRSTUVWYZ"}};
+
+  /**
+   * Constructor.
+   *
+   * @param pattern a motif or a regular expression
+   * @param degenerate if true, ambiguity codes contained in a motif match all
+   * the residues they stand for. Not used with regular expressions.
+   * @param alphabetType one of DAlphabet.XXX_ALPHABET. Used to select the
+   * ambiguity codes.
+   *
+   * @throws PatternSyntaxException if pattern is not a valid regular expression
+   */
+  public DPatternSearchEngine(String pattern, boolean degenerate, int alphabetType){
+    String[] residues;
+    int      i;
+
+    _pattern = pattern;
+    if (!isSimpleMotif(pattern)){
+      _regex = Pattern.compile(pattern, Pattern.CASE_INSENSITIVE);
+      return;
+    }
+    _patLength = pattern.length();
+    residues = new String[_patLength];
+    for(i=0;i<_patLength;i++){
+      residues[i] = getResidues(pattern.charAt(i), degenerate, alphabetType);
+    }
+    if (_patLength<=MAX_BIT_PARALLEL_LENGTH){
+      prepareBitParallel(residues);
+    }
+    else{
+      prepareRegex(residues);
+    }
+  }
+
+  /**
+   * Figures out whether or not a pattern is a simple motif, i.e. only made
+   * of letters.
+   */
+  public static boolean isSimpleMotif(String pattern){
+    int i, size;
+
+    size = pattern.length();
+    if (size==0)
+      return false;
+    for(i=0;i<size;i++){
+      if (!isAsciiLetter(pattern.charAt(i)))
+        return false;
+    }
+    return true;
+  }
+
+  private static boolean isAsciiLetter(char ch){
+    return (ch>='A' && ch<='Z') || (ch>='a' && ch<='z');
+  }
+
+  /**
+   * Returns the residues matched by a motif letter, upper case.
+   */
+  private static String getResidues(char ch, boolean degenerate, int alphabetType){
+    String[][] codes;
+    String     letter;
+
+    letter = String.valueOf(Character.toUpperCase(ch));
+    if (!degenerate)
+      return letter;
+    switch(alphabetType){
+    case DAlphabet.DNA_ALPHABET:
+    case DAlphabet.RNA_ALPHABET:
+      codes = NUC_CODES;
+      break;
+    case DAlphabet.PROTEIN_ALPHABET:
+      codes = PROT_CODES;
+      break;
+    default:
+      return letter;
+    }
+    for(String[] code : codes){
+      if (code[0].equals(letter)){
+        //a code also matches itself
+        return code[1].indexOf(letter)==-1 ? code[1]+letter : code[1];
+      }
+    }
+    return letter;
+  }
+
+  private void prepareBitParallel(String[] residues){
+    String res;
+    char   ch;
+    int    i, j;
+
+    _masks = new long[128];
+    for(i=0;i<residues.length;i++){
+      res = residues[i];
+      for(j=0;j<res.length();j++){
+        ch = res.charAt(j);
+        _masks[ch] |= (1L<<i);
+        _masks[Character.toLowerCase(ch)] |= (1L<<i);
+      }
+    }
+    _matchBit = 1L<<(residues.length-1);
+  }
+
+  private void prepareRegex(String[] residues){
+    StringBuilder buf;
+
+    buf = new StringBuilder();
+    for(String res : residues){
+      if (res.length()==1){
+        buf.append(res);
+      }
+      else{
+        buf.append('[');
+        buf.append(res);
+        buf.append(']');
+      }
+    }
+    _regex = Pattern.compile(buf.toString(), Pattern.CASE_INSENSITIVE);
+  }
+
+  /**
+   * Returns the pattern searched by this engine.
+   */
+  public String getPattern(){
+    return _pattern;
+  }
+
+  /**
+   * Figures out whether or not this engine relies on a regular expression.
+   */
+  public boolean isRegularExpression(){
+    return _masks==null;
+  }
+
+  /**
+   * Returns the first match starting at or after a position. Returns null if
+   * there is no match or if the calling thread has been interrupted.
+   *
+   * @param seq the sequence
+   * @param from zero-based position
+   */
+  public DLocation findNext(CharSequence seq, int from){
+    Matcher matcher;
+
+    if (from<0)
+      from = 0;
+    if (from>=seq.length())
+      return null;
+    if (_masks==null){
+      matcher = _regex.matcher(seq);
+      if (!matcher.find(from))
+        return null;
+      return new DLocation(matcher.start(), matcher.end()-1);
+    }
+    return findNextBitParallel(seq, from);
+  }
+
+  private DLocation findNextBitParallel(CharSequence seq, int from){
+    long state = 0;
+    char ch;
+    int  i, size;
+
+    size = seq.length();
+    for(i=from;i<size;i++){
+      ch = seq.charAt(i);
+      state = ((state<<1) | 1L) & (ch<128 ? _masks[ch] : 0L);
+      if ((state & _matchBit)!=0){
+        return new DLocation(i-_patLength+1, i);
+      }
+      if ((i % CHECK_INTERRUPT)==0 && Thread.currentThread().isInterrupted()){
+        return null;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns all the matches of the pattern. Search stops when maxHits matches
+   * have been found or when the calling thread has been interrupted.
+   *
+   * @param seq the sequence
+   * @param maxHits maximum number of matches to report
+   */
+  public List<DLocation> findAll(CharSequence seq, int maxHits){
+    ArrayList<DLocation> hits;
+    DLocation            loc;
+    Thread               thread;
+    long                 state = 0;
+    char                 ch;
+    int                  i, size;
+
+    hits = new ArrayList<>();
+    thread = Thread.currentThread();
+    if (_masks==null){
+      //overlapping matches: next search starts after the previous match start
+      i = 0;
+      while(hits.size()<maxHits && !thread.isInterrupted() && (loc=findNext(seq, i))!=null){
+        hits.add(loc);
+        i = loc.getFrom()+1;
+      }
+      return hits;
+    }
+    size = seq.length();
+    for(i=0;i<size && hits.size()<maxHits;i++){
+      ch = seq.charAt(i);
+      state = ((state<<1) | 1L) & (ch<128 ? _masks[ch] : 0L);
+      if ((state & _matchBit)!=0){
+        hits.add(new DLocation(i-_patLength+1, i));
+      }
+      if ((i % CHECK_INTERRUPT)==0 && thread.isInterrupted()){
+        break;
+      }
+    }
+    return hits;
+  }
+}
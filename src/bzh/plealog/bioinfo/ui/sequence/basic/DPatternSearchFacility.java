@@ -22,14 +22,21 @@ import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
 
 import javax.swing.AbstractAction;
 import javax.swing.JButton;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 import javax.swing.event.EventListenerList;
 
+import bzh.plealog.bioinfo.api.core.config.CoreSystemConfigurator;
+import bzh.plealog.bioinfo.api.data.feature.Feature;
+import bzh.plealog.bioinfo.api.data.feature.FeatureTable;
+import bzh.plealog.bioinfo.api.data.feature.utils.FeatureTableFactory;
+import bzh.plealog.bioinfo.api.data.sequence.DLocation;
+import bzh.plealog.bioinfo.api.data.sequence.DRulerModel;
 import bzh.plealog.bioinfo.api.data.sequence.DSequence;
 import bzh.plealog.bioinfo.ui.sequence.event.DPatternEvent;
 import bzh.plealog.bioinfo.ui.sequence.event.DPatternListener;
@@ -38,13 +45,37 @@ import bzh.plealog.bioinfo.ui.util.SearchField;
 import com.plealog.genericapp.api.EZApplicationBranding;
 import com.plealog.genericapp.api.EZEnvironment;
 
+/**
+ * This class provides a search field to locate a pattern on a sequence. Each
+ * click on the search button locates the next match; the find all button
+ * locates all matches at once. In addition, a set of motifs can be searched
+ * on both strands at once using searchMotifs(): matches are then reported as
+ * a FeatureTable. Searches run in a background thread; results are reported
+ * to DPatternListeners from the EDT.
+ * 
+ * @author Patrick G. Durand
+ */
 public class DPatternSearchFacility {
   private JButton             _search;
+  private JButton             _searchAll;
   private DSequence           _sequence;
   private boolean             _inSearch;
   private int                 _lastSearchPosition = -1;
   private String              _helper = "Enter a pattern to search for";
   private SearchField         _sf;
+  private DPatternSearchEngine _engine;
+  private boolean             _degenerate;
+  private SearchThread        _searchThread;
+  // used to discard results of obsolete searches
+  private int                 _searchGeneration;
+
+  /**maximum number of matches reported by a find all search or a motif search*/
+  public static final int MAX_HITS = 10000;
+
+  /**key of the features created by a motif search*/
+  public static final String MOTIF_FEATURE_KEY = "motif";
+  /**qualifier containing the motif matched by a feature*/
+  public static final String MOTIF_QUALIFIER = "pattern";
 
   //listener for sequence selection.
   private EventListenerList _listenerList = new EventListenerList();
@@ -55,6 +86,27 @@ public class DPatternSearchFacility {
   public void resetSearch(){
     _lastSearchPosition = -1;
     _inSearch = false;
+    if (_searchThread!=null){
+      _searchThread.interrupt();
+      _searchThread = null;
+      _searchGeneration++;
+      searchEnded();
+    }
+  }
+  /**
+   * Figures out whether or not IUPAC ambiguity codes contained in a motif match all
+   * the residues they stand for. Default is false.
+   */
+  public void setDegenerateMatching(boolean degenerate){
+    _degenerate = degenerate;
+    resetSearch();
+  }
+  /**
+   * Figures out whether or not IUPAC ambiguity codes contained in a motif match all
+   * the residues they stand for.
+   */
+  public boolean isDegenerateMatching(){
+    return _degenerate;
   }
   public void setSequence(DSequence sequence){
     _sequence = sequence;
@@ -62,48 +114,267 @@ public class DPatternSearchFacility {
   }
 
   /**
-   * This class handles the save button actions.
+   * Searches for a set of motifs in a single pass over the sequence. Matches are
+   * reported to DPatternListeners as a FeatureTable, see DPatternEvent.getFeatures().
+   * Motifs are searched case insensitive; T and U are equivalent.
+   *
+   * @param motifs the motifs to search for. Only letters are allowed.
+   * @param bothStrands if true, motifs are also searched on the reverse strand of
+   * nucleotide sequences.
+   *
+   * @throws IllegalArgumentException if a motif contains characters other than letters
+   */
+  public void searchMotifs(List<String> motifs, boolean bothStrands){
+    DMultiPatternSearchEngine engine;
+    String                    label;
+
+    if (_sequence==null || motifs.isEmpty()){
+      return;
+    }
+    engine = new DMultiPatternSearchEngine(motifs, bothStrands, _sequence.getAlphabet().getType());
+    label = motifs.size()==1 ? motifs.get(0) : motifs.size()+" motifs";
+    resetSearch();
+    startSearch(new SearchThread(engine, label, _sequence, ++_searchGeneration));
+  }
+  /**
+   * Prepares a search engine for the current user pattern. Returns null if the
+   * pattern is not valid.
+   */
+  private DPatternSearchEngine createEngine(String userPattern){
+    try{
+      return new DPatternSearchEngine(userPattern, _degenerate, _sequence.getAlphabet().getType());
+    }
+    catch(PatternSyntaxException ex){
+      JOptionPane.showMessageDialog(
+          EZEnvironment.getParentFrame(),
+          "Invalid pattern: "+userPattern,
+          EZApplicationBranding.getAppName(),
+          JOptionPane.WARNING_MESSAGE);
+      return null;
+    }
+  }
+  /**
+   * Starts a search in the background.
+   */
+  private void startSearch(DPatternSearchEngine engine, int from, boolean findAll){
+    startSearch(new SearchThread(engine, _sequence, from, findAll, ++_searchGeneration));
+  }
+  private void startSearch(SearchThread thread){
+    if (_searchThread!=null){
+      _searchThread.interrupt();
+    }
+    _searchThread = thread;
+    if (_sf!=null){
+      _search.setEnabled(false);
+      _searchAll.setEnabled(false);
+    }
+    EZEnvironment.setWaitCursor();
+    _searchThread.start();
+  }
+  /**
+   * Converts motif matches to features. Feature coordinates are sequence
+   * coordinates.
+   */
+  private FeatureTable createFeatureTable(DSequence sequence, DMultiPatternSearchEngine engine, 
+      List<DMultiPatternSearchEngine.Hit> hits){
+    FeatureTableFactory ftFactory;
+    FeatureTable        fTable;
+    Feature             feat;
+    DRulerModel         rModel;
+
+    ftFactory = CoreSystemConfigurator.getFeatureTableFactory();
+    fTable = ftFactory.getFTInstance();
+    rModel = sequence.getRulerModel();
+    for(DMultiPatternSearchEngine.Hit hit : hits){
+      feat = ftFactory.getFInstance();
+      feat.setKey(MOTIF_FEATURE_KEY);
+      feat.setFrom(rModel.getSeqPos(hit.getFrom()));
+      feat.setTo(rModel.getSeqPos(hit.getTo()));
+      feat.setStrand(hit.getStrand());
+      feat.addQualifier(MOTIF_QUALIFIER, engine.getMotif(hit.getMotif()));
+      fTable.addFeature(feat);
+    }
+    return fTable;
+  }
+  /**
+   * Restores the UI when a search is over.
+   */
+  private void searchEnded(){
+    boolean enable;
+
+    EZEnvironment.setDefaultCursor();
+    if (_sf==null)
+      return;
+    enable = _sf.getText().length()>0;
+    _search.setEnabled(enable);
+    _searchAll.setEnabled(enable);
+  }
+  /**
+   * Handles the result of a search. Called from the EDT.
+   */
+  private void searchDone(SearchThread thread, DLocation match, List<DLocation> matches, 
+      FeatureTable features, boolean truncated){
+    DPatternEvent event;
+    String        userPattern;
+
+    if (thread.generation!=_searchGeneration){
+      return;
+    }
+    _searchThread = null;
+    searchEnded();
+    if (thread.multiEngine!=null){
+      //match is the first hit, if any. Features are always set, so that listeners
+      //know that an empty result comes from a motif search
+      if (match==null){
+        event = new DPatternEvent(DPatternSearchFacility.this, thread.sequence, thread.label, -1, -1);
+      }
+      else{
+        event = new DPatternEvent(DPatternSearchFacility.this, thread.sequence, thread.label, 
+            match.getFrom(), match.getTo());
+      }
+      event.setFeatures(features);
+      event.setTruncated(truncated);
+      fireDPatternEvent(event);
+      return;
+    }
+    userPattern = thread.engine.getPattern();
+    if (thread.findAll){
+      if (matches.isEmpty()){
+        event = new DPatternEvent(DPatternSearchFacility.this, thread.sequence, userPattern, -1, -1);
+      }
+      else{
+        event = new DPatternEvent(DPatternSearchFacility.this, thread.sequence, userPattern, 
+            matches.get(0).getFrom(), matches.get(0).getTo());
+        event.setMatches(matches);
+        event.setTruncated(truncated);
+      }
+      fireDPatternEvent(event);
+      return;
+    }
+    if (match==null){
+      _inSearch = false;
+      fireDPatternEvent(new DPatternEvent(DPatternSearchFacility.this, thread.sequence, userPattern, -1, -1));
+      return;
+    }
+    _lastSearchPosition = match.getFrom();
+    fireDPatternEvent(new DPatternEvent(DPatternSearchFacility.this, thread.sequence, userPattern, 
+        match.getFrom(), match.getTo()));
+  }
+  /**
+   * This class runs a search. The sequence is scanned directly, i.e. without
+   * converting it to a String.
+   */
+  private class SearchThread extends Thread{
+    private DPatternSearchEngine      engine;
+    private DMultiPatternSearchEngine multiEngine;
+    private String                    label;
+    private DSequence                 sequence;
+    private int                       from;
+    private boolean                   findAll;
+    private int                       generation;
+
+    private SearchThread(DPatternSearchEngine engine, DSequence sequence, int from, boolean findAll, int generation){
+      super("DPatternSearchFacility-search");
+      setDaemon(true);
+      this.engine = engine;
+      this.sequence = sequence;
+      this.from = from;
+      this.findAll = findAll;
+      this.generation = generation;
+    }
+    private SearchThread(DMultiPatternSearchEngine multiEngine, String label, DSequence sequence, int generation){
+      this(null, sequence, 0, true, generation);
+      this.multiEngine = multiEngine;
+      this.label = label;
+    }
+    public void run(){
+      final List<DLocation> matches;
+      final DLocation       match;
+      final FeatureTable    features;
+      final boolean         truncated;
+      List<DMultiPatternSearchEngine.Hit> hits;
+      List<DLocation>       locs;
+      CharSequence          seq;
+
+      seq = new DSequenceCharSequence(sequence);
+      //one more match is requested to know whether or not the search was truncated
+      if (multiEngine!=null){
+        hits = multiEngine.findAll(seq, MAX_HITS+1);
+        truncated = hits.size()>MAX_HITS;
+        if (truncated){
+          hits = hits.subList(0, MAX_HITS);
+        }
+        features = createFeatureTable(sequence, multiEngine, hits);
+        match = hits.isEmpty() ? null : new DLocation(hits.get(0).getFrom(), hits.get(0).getTo());
+        matches = null;
+      }
+      else if (findAll){
+        locs = engine.findAll(seq, MAX_HITS+1);
+        truncated = locs.size()>MAX_HITS;
+        matches = truncated ? locs.subList(0, MAX_HITS) : locs;
+        match = null;
+        features = null;
+      }
+      else{
+        match = engine.findNext(seq, from);
+        matches = null;
+        features = null;
+        truncated = false;
+      }
+      if (isInterrupted()){
+        return;
+      }
+      SwingUtilities.invokeLater(new Runnable(){
+        public void run(){
+          searchDone(SearchThread.this, match, matches, features, truncated);
+        }
+      });
+    }
+  }
+  /**
+   * This class handles the search button actions.
    */
   private class SearchButtonActionListener extends AbstractAction{
     private static final long serialVersionUID = 1769638723310098361L;
-    private Matcher matcher;
 
     public void actionPerformed(ActionEvent e){
-      Pattern seed;
-      String  str, userPattern;
-      int     start, end;
+      String userPattern;
 
       userPattern = _sf.getText();
       if (_sequence==null || userPattern.length()<1){
         return;
       }
-      str = userPattern;
       if (_inSearch==false){
-        try{
-          seed = Pattern.compile(str, Pattern.CASE_INSENSITIVE);
-          matcher = seed.matcher(_sequence.toString());
-        }
-        catch(Exception ex){
-          JOptionPane.showMessageDialog(
-              EZEnvironment.getParentFrame(),
-              "Invalid pattern: "+str,
-              EZApplicationBranding.getAppName(),
-              JOptionPane.WARNING_MESSAGE);
+        _engine = createEngine(userPattern);
+        if (_engine==null){
           return;
         }
         _lastSearchPosition = -1;
         _inSearch = true;
       }
+      startSearch(_engine, _lastSearchPosition+1, false);
+    }
+  }
+  /**
+   * This class handles the find all button actions.
+   */
+  private class SearchAllButtonActionListener extends AbstractAction{
+    private static final long serialVersionUID = -5000420427416393592L;
+
+    public void actionPerformed(ActionEvent e){
+      DPatternSearchEngine engine;
+      String               userPattern;
 
-      if (!matcher.find(_lastSearchPosition+1)){
-        _inSearch = false;
-        fireDPatternEvent(new DPatternEvent(DPatternSearchFacility.this, _sequence, userPattern, -1, -1));
+      userPattern = _sf.getText();
+      if (_sequence==null || userPattern.length()<1){
         return;
       }
-      //returned values are zero-based, but end is the char located after the last pattern match
-      _lastSearchPosition = start = matcher.start();
-      end = matcher.end();
-      fireDPatternEvent(new DPatternEvent(DPatternSearchFacility.this, _sequence, userPattern, start, end-1));
+      engine = createEngine(userPattern);
+      if (engine==null){
+        return;
+      }
+      resetSearch();
+      startSearch(engine, 0, true);
     }
   }
   public SearchField getSearchForm(){
@@ -111,17 +382,22 @@ public class DPatternSearchFacility {
     _sf = new SearchField();
     _sf.setHelperText(_helper);
     _search = _sf.addUserAction(EZEnvironment.getImageIcon("run.png"), new SearchButtonActionListener());
+    _search.setToolTipText("Find next");
+    _searchAll = _sf.addUserAction(EZEnvironment.getImageIcon("search.png"), new SearchAllButtonActionListener());
+    _searchAll.setToolTipText("Find all");
     _sf.addPropertyChangeListener(SearchField.PROPERTY_TEXT,
         new PropertyChangeListener() {
       public void propertyChange(PropertyChangeEvent evt) {
         String l = evt.getNewValue().toString();
-        _search.setEnabled((l!=null && l.length()>0));
-        if (_lastSearchPosition!=-1){
+        if (_lastSearchPosition!=-1 || _inSearch || _searchThread!=null){
           resetSearch();
         }
+        _search.setEnabled((l!=null && l.length()>0));
+        _searchAll.setEnabled((l!=null && l.length()>0));
       }
     });
     _search.setEnabled(false);
+    _searchAll.setEnabled(false);
     _sf.addKeyListener(new MyKeyListener());
     Dimension dim = _sf.getPreferredSize();
     dim.width = 260;
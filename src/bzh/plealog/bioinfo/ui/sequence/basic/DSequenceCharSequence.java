@@ -0,0 +1,88 @@
+/* Copyright (C) 2003-2019 Patrick G. Durand
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *     https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ */
+package bzh.plealog.bioinfo.ui.sequence.basic;
+
+import bzh.plealog.bioinfo.api.data.sequence.DSequence;
+
+/**
+ * This class provides a CharSequence view of a DSequence. Characters are read
+ * from the DSequence symbols: no copy of the sequence is done, so this view can
+ * be used to run java.util.regex or other text-based algorithms on very long
+ * sequences.
+ *
+ * @author Patrick G. Durand
+ */
+public class DSequenceCharSequence implements CharSequence {
+  private DSequence _sequence;
+  private int       _offset;
+  private int       _length;
+
+  /**
+   * Constructor.
+   *
+   * @param sequence the sequence to view
+   */
+  public DSequenceCharSequence(DSequence sequence) {
+    this(sequence, 0, sequence.size());
+  }
+
+  private DSequenceCharSequence(DSequence sequence, int offset, int length) {
+    _sequence = sequence;
+    _offset = offset;
+    _length = length;
+  }
+
+  /**
+   * Returns the sequence viewed by this object.
+   */
+  public DSequence getSequence() {
+    return _sequence;
+  }
+
+  @Override
+  public int length() {
+    return _length;
+  }
+
+  @Override
+  public char charAt(int index) {
+    if (index < 0 || index >= _length) {
+      throw new IndexOutOfBoundsException("index: " + index + ", length: " + _length);
+    }
+    return _sequence.getSymbol(_offset + index).getChar();
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    if (start < 0 || end > _length || start > end) {
+      throw new IndexOutOfBoundsException("start: " + start + ", end: " + end + ", length: " + _length);
+    }
+    return new DSequenceCharSequence(_sequence, _offset + start, end - start);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder buf;
+    int i;
+
+    buf = new StringBuilder(_length);
+    for (i = 0; i < _length; i++) {
+      buf.append(_sequence.getSymbol(_offset + i).getChar());
+    }
+    return buf.toString();
+  }
+}
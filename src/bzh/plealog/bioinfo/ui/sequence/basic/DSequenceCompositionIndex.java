@@ -0,0 +1,196 @@
+/* Copyright (C) 2003-2019 Patrick G. Durand
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *     https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ */
+package bzh.plealog.bioinfo.ui.sequence.basic;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+
+import bzh.plealog.bioinfo.api.data.sequence.DAlphabet;
+import bzh.plealog.bioinfo.api.data.sequence.DLocation;
+import bzh.plealog.bioinfo.api.data.sequence.DSequence;
+import bzh.plealog.bioinfo.api.data.sequence.DSymbol;
+import bzh.plealog.bioinfo.api.data.sequence.stat.AlphabetCounter;
+import bzh.plealog.bioinfo.api.data.sequence.stat.SymbolCounter;
+
+/**
+ * This class is an index used to compute the composition of any region of a
+ * sequence without scanning that region. For each symbol of the alphabet, the
+ * index stores cumulative counts every BLOCK_SIZE residues; the composition of
+ * a region is then obtained by differences of cumulative counts, plus a scan of
+ * at most 2 x BLOCK_SIZE residues.
+ *
+ * The index is built once per sequence, preferably out of the EDT since it
+ * requires a full scan of the sequence. Results are identical to the ones
+ * provided by StatUtils.computeComposition().
+ *
+ * @author Patrick G. Durand
+ */
+public class DSequenceCompositionIndex {
+  private DSequence _sequence;
+  private DSymbol[] _symbols;
+  // symbol slot of each residue; -1 for symbols not in the alphabet
+  private byte[]    _residues;
+  // cumulative counts: block then symbol
+  private int[]     _cumulCounts;
+
+  /**number of residues between two cumulative counts*/
+  public static final int BLOCK_SIZE = 64;
+
+  /**
+   * Constructor. Builds the index.
+   *
+   * @param sequence the sequence to index
+   *
+   * @throws IllegalArgumentException if the sequence alphabet has more than 127
+   * symbols.
+   */
+  public DSequenceCompositionIndex(DSequence sequence){
+    HashMap<Character, Integer> slots;
+    ArrayList<DSymbol>          symbols;
+    Enumeration<DSymbol>        enumSymbols;
+    DSymbol                     symbol;
+    Integer                     slot;
+    int[]                       counts;
+    int                         i, j, size, nSymbols, s;
+
+    _sequence = sequence;
+    slots = new HashMap<>();
+    symbols = new ArrayList<>();
+    enumSymbols = sequence.getAlphabet().symbols();
+    while(enumSymbols.hasMoreElements()){
+      symbol = enumSymbols.nextElement();
+      if (!slots.containsKey(symbol.getChar())){
+        slots.put(symbol.getChar(), symbols.size());
+        symbols.add(symbol);
+      }
+    }
+    nSymbols = symbols.size();
+    if (nSymbols>Byte.MAX_VALUE){
+      throw new IllegalArgumentException("too many symbols: "+nSymbols);
+    }
+    _symbols = symbols.toArray(new DSymbol[0]);
+    size = sequence.size();
+    _residues = new byte[size];
+    _cumulCounts = new int[(size/BLOCK_SIZE + 1) * nSymbols];
+    counts = new int[nSymbols];
+    for(i=0;i<size;i++){
+      if ((i % BLOCK_SIZE)==0){
+        System.arraycopy(counts, 0, _cumulCounts, (i/BLOCK_SIZE)*nSymbols, nSymbols);
+      }
+      slot = slots.get(sequence.getSymbol(i).getChar());
+      s = slot!=null ? slot : -1;
+      _residues[i] = (byte) s;
+      if (s!=-1){
+        counts[s]++;
+      }
+    }
+    if ((size % BLOCK_SIZE)==0){
+      j = (size/BLOCK_SIZE)*nSymbols;
+      System.arraycopy(counts, 0, _cumulCounts, j, nSymbols);
+    }
+  }
+
+  /**
+   * Returns the indexed sequence.
+   */
+  public DSequence getSequence(){
+    return _sequence;
+  }
+
+  /**
+   * Adds to counts the composition of residues [0..pos[ using sign as a factor.
+   */
+  private void addPrefix(int[] counts, int pos, int sign){
+    int i, block, nSymbols, s;
+
+    nSymbols = _symbols.length;
+    block = pos / BLOCK_SIZE;
+    for(i=0;i<nSymbols;i++){
+      counts[i] += sign * _cumulCounts[block*nSymbols+i];
+    }
+    for(i=block*BLOCK_SIZE;i<pos;i++){
+      s = _residues[i];
+      if (s!=-1){
+        counts[s] += sign;
+      }
+    }
+  }
+
+  private void addRange(int[] counts, int from, int to){
+    from = Math.max(0, from);
+    to = Math.min(to, _residues.length-1);
+    if (to<from)
+      return;
+    addPrefix(counts, to+1, 1);
+    addPrefix(counts, from, -1);
+  }
+
+  private AlphabetCounter getAlphabetCounter(int[] counts){
+    AlphabetCounter alphC;
+    SymbolCounter[] counters;
+    DAlphabet       alphabet;
+    int             i, size;
+
+    alphabet = _sequence.getAlphabet();
+    alphC = new AlphabetCounter(alphabet, true);
+    counters = alphC.getAllCounters();
+    if (counters==null)
+      return alphC;
+    size = _symbols.length;
+    for(SymbolCounter counter : counters){
+      for(i=0;i<size;i++){
+        if (_symbols[i].getChar()==counter.getSymbol().getChar()){
+          counter.setCounter(counts[i]);
+          break;
+        }
+      }
+    }
+    return alphC;
+  }
+
+  /**
+   * Returns the composition of a region.
+   *
+   * @param from first position. Zero-based absolute value.
+   * @param to last position. Zero-based absolute value.
+   */
+  public AlphabetCounter getComposition(int from, int to){
+    int[] counts;
+
+    counts = new int[_symbols.length];
+    addRange(counts, from, to);
+    return getAlphabetCounter(counts);
+  }
+
+  /**
+   * Returns the composition of a set of regions. Overlapping regions are
+   * counted several times.
+   *
+   * @param locs the regions. Zero-based absolute values.
+   */
+  public AlphabetCounter getComposition(List<DLocation> locs){
+    int[] counts;
+
+    counts = new int[_symbols.length];
+    for(DLocation loc : locs){
+      addRange(counts, loc.getFrom(), loc.getTo());
+    }
+    return getAlphabetCounter(counts);
+  }
+}
@@ -20,15 +20,24 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.Toolkit;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.Point2D;
 import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.swing.JLabel;
 import javax.swing.JTable;
@@ -56,7 +65,10 @@ import bzh.plealog.bioinfo.ui.sequence.event.DSequenceSelectionListener;
 import bzh.plealog.bioinfo.util.DAlphabetUtils;
 
 /**
- * This is a basic sequence viewer implemented on top of a JTable.
+ * This is a basic sequence viewer implemented on top of a JTable. By default, the 
+ * viewer does not rely on the JTable cell renderer system to paint the sequence:
+ * each visible row is drawn using a few glyph runs, one per symbol color, that are 
+ * cached. Layout, selection and mouse handling are still provided by the JTable.
  * 
  * @author Patrick G. Durand
  */
@@ -71,6 +83,9 @@ public class DSequenceTableViewer extends JTable implements DSequenceSelectionLi
   private JTextArea                 _positionF;
   private ContextMenuManager        _mnuManager;
   private DSelectionListenerSupport _lSupport;
+  private boolean                   _fastPainting = true;
+  private RowGlyphsCache            _rowGlyphs = new RowGlyphsCache();
+  private FontRenderContext         _glyphsFrc;
 
   //listener for sequence selection.
   //private EventListenerList _listenerList = new EventListenerList();
@@ -80,6 +95,9 @@ public class DSequenceTableViewer extends JTable implements DSequenceSelectionLi
   public static final int DEFAULT_BLOCK_SIZE = 10;
   public static final int DEFAULT_BLOCK_PER_LINE = 5;
 
+  //maximum number of rows whose glyphs are cached
+  private static final int MAX_CACHED_ROWS = 1024;
+
   /**
    * Default constructor.
    */
@@ -108,6 +126,7 @@ public class DSequenceTableViewer extends JTable implements DSequenceSelectionLi
   public void setBlockSize(int blockSize){
     _blockSize = blockSize;
     ((TableDSequenceModel)this.getModel()).setBlockSize(blockSize);
+    clearRowGlyphs();
     this.repaint();
   }
   /**
@@ -117,6 +136,7 @@ public class DSequenceTableViewer extends JTable implements DSequenceSelectionLi
   public void setBlockPerLine(int bpl){
     _nbBlockPerLine = bpl;
     ((TableDSequenceModel)this.getModel()).setBlockPerLine(bpl);
+    clearRowGlyphs();
     this.repaint();
   }
 
@@ -163,6 +183,7 @@ public class DSequenceTableViewer extends JTable implements DSequenceSelectionLi
 
     model = (TableDSequenceModel) this.getModel();
     model.setSequence(sequence);
+    clearRowGlyphs();
     _mListener.setSequence(sequence!=null?sequence.size():0);
     if (_positionF!=null)
       _positionF.setText("");
@@ -308,6 +329,229 @@ public class DSequenceTableViewer extends JTable implements DSequenceSelectionLi
     }
     return tcr;
   }
+  /**
+   * Figures out whether or not the sequence is painted using cached glyph runs. 
+   * Default is true. When false, the sequence is painted using the JTable cell
+   * renderer system.
+   */
+  public void setFastPainting(boolean fastPainting){
+    _fastPainting = fastPainting;
+    clearRowGlyphs();
+    this.repaint();
+  }
+  public boolean isFastPainting(){
+    return _fastPainting;
+  }
+  public void setFont(Font font){
+    super.setFont(font);
+    clearRowGlyphs();
+  }
+  private void clearRowGlyphs(){
+    //may be called by the JTable constructor
+    if (_rowGlyphs!=null){
+      _rowGlyphs.clear();
+    }
+  }
+  protected void paintComponent(Graphics g){
+    if (!_fastPainting || this.getSequence()==null || this.getRowCount()==0){
+      super.paintComponent(g);
+      return;
+    }
+    paintRows((Graphics2D) g.create());
+  }
+  /**
+   * Paints the visible rows of the sequence.
+   */
+  private void paintRows(Graphics2D g){
+    FontRenderContext frc;
+    RowGlyphs         glyphs;
+    Rectangle         clip, cell;
+    Shape             oldClip;
+    Object            hints;
+    int[]             colX;
+    int               row, firstRow, lastRow, rowH, width, col, nCols, lastCol;
+
+    clip = g.getClipBounds();
+    if (clip==null){
+      clip = new Rectangle(0, 0, getWidth(), getHeight());
+    }
+    if (isOpaque()){
+      g.setColor(getBackground());
+      g.fillRect(0, 0, getWidth(), getHeight());
+    }
+    //same text rendering as Swing labels
+    hints = Toolkit.getDefaultToolkit().getDesktopProperty("awt.font.desktophints");
+    if (hints instanceof Map){
+      g.addRenderingHints((Map<?,?>) hints);
+    }
+    g.setFont(getFont());
+    frc = g.getFontRenderContext();
+    if (!frc.equals(_glyphsFrc)){
+      _rowGlyphs.clear();
+      _glyphsFrc = frc;
+    }
+    nCols = getColumnCount();
+    colX = new int[nCols+1];
+    for(col=0;col<nCols;col++){
+      colX[col+1] = colX[col] + getColumnModel().getColumn(col).getWidth();
+    }
+    width = colX[nCols];
+    firstRow = rowAtPoint(new Point(0, clip.y));
+    lastRow = rowAtPoint(new Point(0, clip.y + clip.height - 1));
+    if (firstRow==-1){
+      return;
+    }
+    if (lastRow==-1){
+      lastRow = getRowCount()-1;
+    }
+    for(row=firstRow;row<=lastRow;row++){
+      cell = getCellRect(row, 0, true);
+      rowH = cell.height;
+      g.setColor(Color.WHITE);
+      g.fillRect(0, cell.y, width, rowH);
+      glyphs = _rowGlyphs.get(row);
+      if (glyphs==null){
+        glyphs = createRowGlyphs(row, frc, colX, rowH);
+        _rowGlyphs.put(row, glyphs);
+      }
+      //selected cells: background, then glyphs in selection color
+      for(col=0;col<nCols;col++){
+        if (!isPaintedCellSelected(glyphs, row, col)){
+          continue;
+        }
+        lastCol = col;
+        while(lastCol+1<nCols && isPaintedCellSelected(glyphs, row, lastCol+1)){
+          lastCol++;
+        }
+        g.setColor(clr3);
+        g.fillRect(colX[col], cell.y, colX[lastCol+1]-colX[col], rowH);
+        col = lastCol;
+      }
+      for(int i=0;i<glyphs.runs.length;i++){
+        g.setColor(glyphs.runColors[i]);
+        g.drawGlyphVector(glyphs.runs[i], 0, cell.y);
+      }
+      for(col=0;col<nCols;col++){
+        if (!isPaintedCellSelected(glyphs, row, col)){
+          continue;
+        }
+        lastCol = col;
+        while(lastCol+1<nCols && isPaintedCellSelected(glyphs, row, lastCol+1)){
+          lastCol++;
+        }
+        oldClip = g.getClip();
+        g.clipRect(colX[col], cell.y, colX[lastCol+1]-colX[col], rowH);
+        g.setColor(clr4);
+        g.drawGlyphVector(glyphs.all, 0, cell.y);
+        g.setClip(oldClip);
+        col = lastCol;
+      }
+    }
+    g.dispose();
+  }
+  private boolean isPaintedCellSelected(RowGlyphs glyphs, int row, int col){
+    return glyphs.symbolCells.get(col) && _mListener.isCellMySelected(row, col);
+  }
+  /**
+   * Prepares the glyphs of a row: one glyph run for each symbol color. Glyphs are 
+   * centered in their cell, as done by the JTable cell renderer. Positions are 
+   * relative to the row top.
+   */
+  private RowGlyphs createRowGlyphs(int row, FontRenderContext frc, int[] colX, int rowH){
+    LinkedHashMap<Color, List<Integer>> colorGlyphs;
+    List<Integer>                       glyphIdx;
+    RowGlyphs                           glyphs;
+    FontMetrics                         fm;
+    Font                                fnt;
+    DSymbol                             symb, spaceSymb;
+    Color                               clr;
+    Point2D.Float[]                     positions;
+    char[]                              chars;
+    int[]                               cells, codes;
+    int                                 i, j, n, col, nCols, baseLine, viewH;
+
+    fnt = getFont();
+    fm = getFontMetrics(fnt);
+    spaceSymb = DAlphabetUtils.getIUPAC_Protein_Alphabet().getSymbol(DSymbol.SPACE_SYMBOL_CODE);
+    nCols = getColumnCount();
+    glyphs = new RowGlyphs();
+    glyphs.symbolCells = new BitSet(nCols);
+    chars = new char[nCols];
+    cells = new int[nCols];
+    colorGlyphs = new LinkedHashMap<>();
+    n = 0;
+    for(col=0;col<nCols;col++){
+      symb = (DSymbol) getModel().getValueAt(row, col);
+      if (symb.equals(spaceSymb)){
+        continue;
+      }
+      glyphs.symbolCells.set(col);
+      clr = symb.getGraphics()!=null ? symb.getGraphics().getTextColor() : Color.BLACK;
+      glyphIdx = colorGlyphs.get(clr);
+      if (glyphIdx==null){
+        glyphIdx = new ArrayList<>();
+        colorGlyphs.put(clr, glyphIdx);
+      }
+      glyphIdx.add(n);
+      chars[n] = symb.getChar();
+      cells[n] = col;
+      n++;
+    }
+    //the cell renderer has a one pixel border around the text
+    viewH = rowH - 2;
+    baseLine = 1 + (viewH/2 - fm.getHeight()/2) + fm.getAscent();
+    glyphs.all = fnt.createGlyphVector(frc, new String(chars, 0, n));
+    positions = new Point2D.Float[n];
+    for(i=0;i<n;i++){
+      col = cells[i];
+      positions[i] = new Point2D.Float(
+          colX[col] + 1 + (colX[col+1] - colX[col] - 2 - fm.charWidth(chars[i]))/2, 
+          baseLine);
+      glyphs.all.setGlyphPosition(i, positions[i]);
+    }
+    glyphs.runs = new GlyphVector[colorGlyphs.size()];
+    glyphs.runColors = new Color[colorGlyphs.size()];
+    i = 0;
+    for(Map.Entry<Color, List<Integer>> entry : colorGlyphs.entrySet()){
+      glyphIdx = entry.getValue();
+      codes = new int[glyphIdx.size()];
+      for(j=0;j<codes.length;j++){
+        codes[j] = glyphs.all.getGlyphCode(glyphIdx.get(j));
+      }
+      glyphs.runs[i] = fnt.createGlyphVector(frc, codes);
+      for(j=0;j<codes.length;j++){
+        glyphs.runs[i].setGlyphPosition(j, positions[glyphIdx.get(j)]);
+      }
+      glyphs.runColors[i] = entry.getKey();
+      i++;
+    }
+    return glyphs;
+  }
+  /**
+   * The glyphs of a row.
+   */
+  private static class RowGlyphs {
+    //all glyphs, used to paint selected cells
+    private GlyphVector   all;
+    //glyphs having a same color
+    private GlyphVector[] runs;
+    private Color[]       runColors;
+    //cells containing a symbol, i.e. not a space
+    private BitSet        symbolCells;
+  }
+  /**
+   * Keeps the glyphs of the most recently painted rows.
+   */
+  private static class RowGlyphsCache extends LinkedHashMap<Integer, RowGlyphs> {
+    private static final long serialVersionUID = 4049712284357453219L;
+
+    private RowGlyphsCache(){
+      super(64, 0.75f, true);
+    }
+    protected boolean removeEldestEntry(Map.Entry<Integer, RowGlyphs> eldest){
+      return size()>MAX_CACHED_ROWS;
+    }
+  }
   /**
    * Utility method used to setup cell width.
    */
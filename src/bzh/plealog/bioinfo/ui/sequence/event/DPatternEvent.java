@@ -17,7 +17,10 @@
 package bzh.plealog.bioinfo.ui.sequence.event;
 
 import java.util.EventObject;
+import java.util.List;
 
+import bzh.plealog.bioinfo.api.data.feature.FeatureTable;
+import bzh.plealog.bioinfo.api.data.sequence.DLocation;
 import bzh.plealog.bioinfo.api.data.sequence.DSequence;
 import bzh.plealog.bioinfo.ui.sequence.basic.DPatternSearchFacility;
 
@@ -32,6 +35,9 @@ public class DPatternEvent extends EventObject {
   private String    _pattern;
   private int       _selFrom;
   private int       _selTo;
+  private List<DLocation> _matches;
+  private FeatureTable    _features;
+  private boolean         _truncated;
 
   public DPatternEvent(DPatternSearchFacility src){
     super(src);
@@ -80,5 +86,38 @@ public class DPatternEvent extends EventObject {
   public void setPattern(String pattern) {
     this._pattern = pattern;
   }
+  /**
+   * Returns all the matched regions when the user asked to find all matches. 
+   * Otherwise returns null. Values are absolute, so use the DSequence DRulerModel 
+   * to get sequence coordinates.
+   */
+  public List<DLocation> getMatches() {
+    return _matches;
+  }
+  public void setMatches(List<DLocation> matches) {
+    _matches = matches;
+  }
+  /**
+   * Returns the matched regions as features when the user asked to search for
+   * a set of motifs, i.e. an empty FeatureTable if no motif was found. Otherwise
+   * returns null. Feature coordinates are sequence coordinates.
+   */
+  public FeatureTable getFeatures() {
+    return _features;
+  }
+  public void setFeatures(FeatureTable features) {
+    _features = features;
+  }
+  /**
+   * Figures out whether or not a find all search or a motif search stopped after
+   * DPatternSearchFacility.MAX_HITS matches. In such a case, remaining matches
+   * are not reported.
+   */
+  public boolean isTruncated() {
+    return _truncated;
+  }
+  public void setTruncated(boolean truncated) {
+    _truncated = truncated;
+  }
 
 }
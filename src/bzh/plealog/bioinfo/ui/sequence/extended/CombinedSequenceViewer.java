@@ -114,10 +114,13 @@ public class CombinedSequenceViewer extends JPanel implements DDSequenceViewerCo
   private JTabbedPane             _jtp;
   private FeatureViewer           _featureViewer;
   private boolean                 _showDefaultToolbar;
+  private FeatureTable            _cartoFeatures;
+  private FeatureTable            _motifFeatures;
   
   private static final String NAME_FIELD_HDR = "Name:";
   private static final String SIZE_FIELD_HDR = "Size:";
   private static final String NOT_FOUND = " not found.";
+  private static final String TRUNCATED = ": only the first %d matches are displayed.";
 
   /**
    * Default constructor.
@@ -308,6 +311,39 @@ public class CombinedSequenceViewer extends JPanel implements DDSequenceViewerCo
    * Adds a FeatureTable to this viewer.
    */
   public void setFeaturesForCartoView(FeatureTable fTable){
+    _cartoFeatures = fTable;
+    _motifFeatures = null;
+    prepareCartoView();
+  }
+  /**
+   * Adds motif matches to this viewer. These features are displayed after the
+   * ones set using setFeaturesForCartoView() and replace previous motif matches.
+   * Pass null to remove motif matches.
+   */
+  public void setMotifFeaturesForCartoView(FeatureTable fTable){
+    _motifFeatures = fTable;
+    prepareCartoView();
+    _cartoViewer.revalidate();
+    _cartoViewer.repaint();
+    _cartoViewerLaneHeader.revalidate();
+    _cartoViewerLaneHeader.repaint();
+  }
+  /**
+   * Searches for a set of motifs on the sequence displayed in this viewer. Search
+   * runs in the background; matches are then displayed as a lane of the graphical 
+   * view.
+   *
+   * @param motifs the motifs to search for. Only letters are allowed.
+   * @param bothStrands if true, motifs are also searched on the reverse strand of
+   * nucleotide sequences.
+   *
+   * @throws IllegalArgumentException if a motif contains characters other than letters
+   */
+  public void searchMotifs(List<String> motifs, boolean bothStrands){
+    _patternFacility.searchMotifs(motifs, bothStrands);
+  }
+  private void prepareCartoView(){
+    FeatureTable        fTable;
     RulerDrawingLane    rdl;
     SequenceDrawingLane sdl=null;
     AxisDrawingLane     adl;
@@ -316,6 +352,7 @@ public class CombinedSequenceViewer extends JPanel implements DDSequenceViewerCo
     int                 labelLength;
 
     _cartoViewer.clear();
+    fTable = _cartoFeatures;
     sequence = this.getSequence();
     if (sequence==null)
       return;
@@ -369,6 +406,9 @@ public class CombinedSequenceViewer extends JPanel implements DDSequenceViewerCo
           sequence.size()//use seq size instead of panel width to compact view as more as possible
           );
     }
+    if (_motifFeatures!=null){
+      BasicFeatureOrganizer.organizeFeatures(_cartoViewer, _motifFeatures, sequence, false, sequence.size());
+    }
     //add some space on far right/left sides of the view
     _cartoViewer.setMargins(50,50);
 
@@ -606,6 +646,11 @@ public class CombinedSequenceViewer extends JPanel implements DDSequenceViewerCo
       int from, to;
       from = event.getMatchFrom();
       to = event.getMatchTo();
+      if (event.getFeatures()!=null){
+        //a motif search always replaces the previous motif lanes
+        CombinedSequenceViewer.this.setMotifFeaturesForCartoView(
+            event.getFeatures().features()!=0 ? event.getFeatures() : null);
+      }
       if (from==-1 && to==-1){
         JOptionPane.showMessageDialog(
             EZEnvironment.getParentFrame(),
@@ -613,9 +658,19 @@ public class CombinedSequenceViewer extends JPanel implements DDSequenceViewerCo
             EZApplicationBranding.getAppName(),
             JOptionPane.INFORMATION_MESSAGE);
       }
-      else{
+      else if (event.getMatches()!=null){
+        CombinedSequenceViewer.this.setSelectionRanges(event.getMatches());
+      }
+      else if (event.getFeatures()==null){
         CombinedSequenceViewer.this.setSelectedSequenceRange(event.getMatchFrom(), event.getMatchTo());
       }
+      if (event.isTruncated()){
+        JOptionPane.showMessageDialog(
+            EZEnvironment.getParentFrame(),
+            event.getPattern()+String.format(TRUNCATED, DPatternSearchFacility.MAX_HITS),
+            EZApplicationBranding.getAppName(),
+            JOptionPane.INFORMATION_MESSAGE);
+      }
     }
   }
   private class MyCartoFeatureListener implements SViewerSelectionListener{
@@ -30,8 +30,6 @@ import bzh.plealog.bioinfo.api.data.feature.Feature;
 import bzh.plealog.bioinfo.api.data.feature.FeatureTable;
 import bzh.plealog.bioinfo.api.data.sequence.DLocation;
 import bzh.plealog.bioinfo.api.data.sequence.DSequence;
-import bzh.plealog.bioinfo.api.data.sequence.stat.AlphabetCounter;
-import bzh.plealog.bioinfo.api.data.sequence.stat.StatUtils;
 import bzh.plealog.bioinfo.ui.feature.FeatureViewer;
 import bzh.plealog.bioinfo.ui.sequence.basic.AlphabetCounterDualViewer;
 import bzh.plealog.bioinfo.ui.sequence.event.DDSequenceViewerConn;
@@ -148,14 +146,7 @@ public class CombinedSequenceViewerExt extends JPanel implements DDSequenceViewe
     _seqViewer.setSequence(sequence);
 
     if (_alphViewer!=null){
-      AlphabetCounter alphC;
-      if (sequence!=null){
-        alphC = StatUtils.computeComposition(sequence);
-      }
-      else{
-        alphC = null;
-      }
-      _alphViewer.setFullSeqAlphabetCounter(alphC);
+      _alphViewer.setSequence(sequence);
     }
   }
   /**
@@ -23,6 +23,7 @@ import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
+import java.awt.event.InputEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
@@ -378,11 +379,15 @@ public class JKTable extends JTable implements ColumnManagableTable {
       model = (JKTableModel) tableObj.getModel();
       col = tableObj.columnAtPoint(e.getPoint());
       colID = model.getColumnId(col);
-      if (colID == model.getSortColumn()) {
+      if ((e.getModifiersEx() & InputEvent.SHIFT_DOWN_MASK) != 0 && model.getSecondarySortColumnsPropertyName() != null) {
+        // SHIFT+click: add a secondary sort column (compound sorting)
+        model.addSecondarySortColumn(colID);
+      } else if (colID == model.getSortColumn()) {
         model.setSortColumnAscending(!model.isSortColumnAscending());
       } else {
         model.setSortColumn(colID);
         model.setSortColumnAscending(true);
+        model.setSecondarySortColumns(null, null);
       }
       header.repaint();
       tableObj.clearSelection();
@@ -440,14 +445,23 @@ public class JKTable extends JTable implements ColumnManagableTable {
     public void paintComponent(Graphics g) {
       super.paintComponent(g);
       JKTableModel model = (JKTableModel) tableObj.getModel();
-      if (model.getSortColumn() != curColID)
+      boolean ascending;
+      int thenByIdx = model.getSecondarySortColumnIndex(curColID);
+      if (model.getSortColumn() == curColID) {
+        ascending = model.isSortColumnAscending();
+      } else if (thenByIdx != -1) {
+        // secondary sort column: lighter arrow
+        ascending = model.getSecondarySortColumnsAscending()[thenByIdx];
+        g.setColor(Color.GRAY);
+      } else {
         return;
+      }
 
       int topInset = this.getBorder().getBorderInsets(this).top;
       int rightInset = this.getBorder().getBorderInsets(this).right;
       int right = this.getBounds().width - 2 * rightInset;
 
-      if (model.isSortColumnAscending()) {
+      if (ascending) {
         xPoints[0] = right - 9;
         xPoints[1] = xPoints[0] + 3;
         xPoints[2] = xPoints[0] + 6;
@@ -39,6 +39,8 @@ public abstract class JKTableModel extends AbstractTableModel {
   private TableHeaderColumnItem[] displayedHeaders;
   private int sortedColumn = 0;
   private boolean sortAscending = false;
+  private int[] thenByColumns = new int[0];
+  private boolean[] thenByAscending = new boolean[0];
   protected SerialEntityBag sortedItems = null;
 
   public JKTableModel() {
@@ -74,6 +76,12 @@ public abstract class JKTableModel extends AbstractTableModel {
     if (prop != null) {
       setSortColumnAscending("true".equals(prop));
     }
+    if (this.getSecondarySortColumnsPropertyName() != null) {
+      prop = EZEnvironment.getApplicationProperty(this.getSecondarySortColumnsPropertyName());
+      if (prop != null) {
+        decodeSecondarySortColumns(prop);
+      }
+    }
   }
 
   public abstract TableHeaderColumnItem[] getReferenceColumnHeaders();
@@ -86,6 +94,14 @@ public abstract class JKTableModel extends AbstractTableModel {
 
   public abstract String getSortAscendingPropertyName();
 
+  /**
+   * Returns the name of the property used to save secondary sort columns. Default
+   * implementation returns null: this table model does not handle compound sorting.
+   */
+  public String getSecondarySortColumnsPropertyName() {
+    return null;
+  }
+
   public void updateColumnHeaders(TableHeaderColumnItem[] newHeaders) {
     this.displayedHeaders = newHeaders;
     EZEnvironment.setApplicationProperty(getDisplayHeaderPropertyName(), TableColumnManager.getDelColumns(newHeaders));
@@ -124,6 +140,127 @@ public abstract class JKTableModel extends AbstractTableModel {
     EZEnvironment.setApplicationProperty(this.getSortAscendingPropertyName(), (this.sortAscending ? "true" : "false"));
   }
 
+  /**
+   * Returns the secondary sort columns, i.e. the columns used to order rows having
+   * the same value within the main sort column. Returned array is never null.
+   */
+  public int[] getSecondarySortColumns() {
+    return this.thenByColumns;
+  }
+
+  /**
+   * Returns the sort direction of each secondary sort column. Returned array is never null.
+   */
+  public boolean[] getSecondarySortColumnsAscending() {
+    return this.thenByAscending;
+  }
+
+  /**
+   * Sets the secondary sort columns.
+   * 
+   * @param columns ids of the columns. Can be null to reset compound sorting.
+   * @param ascending sort direction of each column. Can be null to reset compound sorting.
+   */
+  public void setSecondarySortColumns(int[] columns, boolean[] ascending) {
+    if (columns == null || ascending == null) {
+      this.thenByColumns = new int[0];
+      this.thenByAscending = new boolean[0];
+    } else {
+      this.thenByColumns = columns.clone();
+      this.thenByAscending = ascending.clone();
+    }
+    if (getSecondarySortColumnsPropertyName() != null) {
+      EZEnvironment.setApplicationProperty(getSecondarySortColumnsPropertyName(), encodeSecondarySortColumns());
+    }
+  }
+
+  /**
+   * Adds a secondary sort column. If that column is already a sort key, its sort
+   * direction is reversed.
+   * 
+   * @param column id of the column
+   */
+  public void addSecondarySortColumn(int column) {
+    int[] columns;
+    boolean[] ascending;
+    int i, n;
+
+    if (column == getSortColumn()) {
+      return;
+    }
+    for (i = 0; i < thenByColumns.length; i++) {
+      if (thenByColumns[i] == column) {
+        ascending = thenByAscending.clone();
+        ascending[i] = !ascending[i];
+        setSecondarySortColumns(thenByColumns, ascending);
+        return;
+      }
+    }
+    n = thenByColumns.length;
+    columns = new int[n + 1];
+    ascending = new boolean[n + 1];
+    System.arraycopy(thenByColumns, 0, columns, 0, n);
+    System.arraycopy(thenByAscending, 0, ascending, 0, n);
+    columns[n] = column;
+    ascending[n] = true;
+    setSecondarySortColumns(columns, ascending);
+  }
+
+  /**
+   * Returns the position of a column within the secondary sort columns or -1 if not found.
+   */
+  public int getSecondarySortColumnIndex(int column) {
+    for (int i = 0; i < thenByColumns.length; i++) {
+      if (thenByColumns[i] == column) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Secondary sort columns are saved as a comma separated list of column ids, each
+   * followed by a or d (ascending or descending).
+   */
+  private String encodeSecondarySortColumns() {
+    StringBuilder buf = new StringBuilder();
+    for (int i = 0; i < thenByColumns.length; i++) {
+      if (i != 0) {
+        buf.append(",");
+      }
+      buf.append(thenByColumns[i]);
+      buf.append(thenByAscending[i] ? "a" : "d");
+    }
+    return buf.toString();
+  }
+
+  private void decodeSecondarySortColumns(String prop) {
+    String[] items;
+    int[] columns;
+    boolean[] ascending;
+    String item;
+    int i;
+
+    if (StringUtils.isBlank(prop)) {
+      return;
+    }
+    items = StringUtils.split(prop, ',');
+    columns = new int[items.length];
+    ascending = new boolean[items.length];
+    try {
+      for (i = 0; i < items.length; i++) {
+        item = items[i].trim();
+        columns[i] = Integer.parseInt(item.substring(0, item.length() - 1));
+        ascending[i] = item.endsWith("a");
+      }
+    } catch (Exception e) {
+      // invalid property: ignore it
+      return;
+    }
+    this.thenByColumns = columns;
+    this.thenByAscending = ascending;
+  }
+
   public TableHeaderColumnItem getDisplayedHeader(int columnIndex) {
     return this.displayedHeaders[columnIndex];
   }
@@ -146,7 +283,8 @@ public abstract class JKTableModel extends AbstractTableModel {
     if (sorter != null) {
       EZEnvironment.setWaitCursor();
       ProgressTinyDialog mon = null;
-      if ((!sorter.stillSorted(getSortColumn())) && (sorter.getSize() > 100000)) {// display Progress UI only with large
+      if ((!sorter.stillSorted(getSortColumn(), isSortColumnAscending(), getSecondarySortColumns(),
+          getSecondarySortColumnsAscending())) && (sorter.getSize() > 100000)) {// display Progress UI only with large
                                                                                   // amount of data
         mon = new ProgressTinyDialog("Sorting table", 0, true, true, false);
       }
@@ -162,7 +300,8 @@ public abstract class JKTableModel extends AbstractTableModel {
   }
 
   protected void sortData(ProgressTinyDialog monitor, boolean force, JKTableModelSorter<?> sorter) {
-    SerialEntityBag data = sorter.sort(monitor, getSortColumn(), force);
+    SerialEntityBag data = sorter.sort(monitor, getSortColumn(), isSortColumnAscending(), getSecondarySortColumns(),
+        getSecondarySortColumnsAscending(), force);
 
     if (data == null)
       return;
@@ -16,31 +16,15 @@
  */
 package bzh.plealog.bioinfo.ui.util;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.InputStream;
-import java.io.ObjectInput;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.OutputStream;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
 
 import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import bzh.plealog.bioinfo.ui.blast.resulttable.sort.DoubleEntity;
-import bzh.plealog.bioinfo.ui.blast.resulttable.sort.Entity;
-import bzh.plealog.bioinfo.ui.blast.resulttable.sort.IntegerEntity;
+import bzh.plealog.bioinfo.ui.blast.resulttable.sort.ColumnKeys;
 import bzh.plealog.bioinfo.ui.blast.resulttable.sort.SerialEntityBag;
-import bzh.plealog.bioinfo.ui.blast.resulttable.sort.StringEntity;
-import bzh.plealog.bioinfo.util.CoreUtil;
+import bzh.plealog.bioinfo.ui.blast.resulttable.sort.SortIndexFile;
 
 /**
  * 
@@ -71,7 +55,7 @@ public abstract class JKTableModelSorter<T> {
 
 	protected abstract ENTITY_TYPE getEntityType(int sortColumn);
 
-	protected abstract List<Entity> getEntities(ProgressTinyDialog monitor, int sortColumn);
+	protected abstract ColumnKeys getColumnKeys(ProgressTinyDialog monitor, int sortColumn);
 
 	protected abstract int getSize();
 
@@ -80,94 +64,140 @@ public abstract class JKTableModelSorter<T> {
 	}
 
 	/**
-	 * Returns the file used to serialize the list of Entities created during the sort operation.
+	 * Returns an identifier of the data model that is sorted. It is saved along with
+	 * the sorted list of IDs to detect stale sort files. Default implementation returns
+	 * null.
 	 */
-	private String getSerializeFile(int sortColumn) {
-		return FilenameUtils.concat(this.directoryPath, this.filePrefix + String.valueOf(sortColumn) + "_a.lst");
+	protected String getDataIdentifier() {
+		return null;
 	}
 
 	/**
-	 * Serializes the list of Entities created during the sort operation.
+	 * Returns a string representation of secondary sort keys, or null if data are only
+	 * sorted on a single column.
 	 */
-	private SerialEntityBag serializeEntities(List<Entity> entities, int sortColumn, boolean save) {
+	private String getSortSpec(boolean ascending, int[] thenBy, boolean[] thenAscending) {
+		StringBuilder buf;
+
+		if (thenBy == null || thenBy.length == 0) {
+			return null;
+		}
+		buf = new StringBuilder(ascending ? "a" : "d");
+		for (int i = 0; i < thenBy.length; i++) {
+			buf.append("_");
+			buf.append(thenBy[i]);
+			buf.append(thenAscending[i] ? "a" : "d");
+		}
+		return buf.toString();
+	}
+
+	/**
+	 * Returns the identifier saved along with a sorted list of IDs.
+	 */
+	private String getDataIdentifier(String sortSpec) {
+		return sortSpec == null ? getDataIdentifier() : getDataIdentifier() + "|" + sortSpec;
+	}
+
+	/**
+	 * Returns the file used to save the sorted list of IDs created during the sort operation.
+	 */
+	private File getSerializeFile(int sortColumn, String sortSpec) {
+		String suffix = sortSpec == null ? "_a.idx" : "_" + sortSpec + ".idx";
+		return new File(FilenameUtils.concat(this.directoryPath, this.filePrefix + String.valueOf(sortColumn) + suffix));
+	}
+
+	/**
+	 * Saves the sorted list of IDs created during the sort operation.
+	 */
+	private SerialEntityBag serializeEntities(int[] ids, int sortColumn, String sortSpec, boolean save) {
 		SerialEntityBag bag = null;
 
-		bag = new SerialEntityBag(true, sortColumn, entities);
+		bag = new SerialEntityBag(true, sortColumn, ids);
 
 		if (save) {
-			String f = getSerializeFile(sortColumn);
-			OutputStream os = null;
-			BufferedOutputStream buffer = null;
-			ObjectOutputStream output = null;
+			File f = getSerializeFile(sortColumn, sortSpec);
 			try {
-				os = new FileOutputStream(f);
-				buffer = new BufferedOutputStream(os);
-				output = new ObjectOutputStream(buffer);
-				output.writeObject(bag);
-				output.flush();
+				SortIndexFile.write(f, sortColumn, getDataIdentifier(sortSpec), ids);
 			} catch (Exception ex) {
-				LOGGER.warn("unable to serialize entities in: " + f + ": " + ex.toString());
-			} finally {
-				IOUtils.closeQuietly(os);
-				IOUtils.closeQuietly(buffer);
-				IOUtils.closeQuietly(output);
+				LOGGER.warn("unable to save sorted IDs in: " + f + ": " + ex.toString());
+				f.delete();
 			}
 		}
 		return bag;
 	}
 
 	/**
-	 * Deserializes the list of Entities created during the sort operation.
+	 * Reloads the sorted list of IDs created during the sort operation.
 	 */
-	private SerialEntityBag deSerializeEntities(ProgressTinyDialog monitor, int sortColumn) {
-		InputStream is = null;
-		String f;
+	private SerialEntityBag deSerializeEntities(ProgressTinyDialog monitor, int sortColumn, String sortSpec) {
 		SerialEntityBag bag = null;
-		InputStream buffer = null;
-		ObjectInput input = null;
+		File f;
 
-		f = getSerializeFile(sortColumn);
-		if (new File(f).exists() == false) {
+		f = getSerializeFile(sortColumn, sortSpec);
+		if (f.exists() == false) {
 			return null;
 		}
 		if (monitor != null) {
 			monitor.setMessage("Reloading sorted table data...");
 		}
 		try {
-			is = new FileInputStream(f);
-			buffer = new BufferedInputStream(is);
-			input = new ObjectInputStream(buffer);
-			bag = (SerialEntityBag) input.readObject();
+			bag = SortIndexFile.read(f, sortColumn, getDataIdentifier(sortSpec), getSize());
 		} catch (Exception e) {
-			LOGGER.warn("unable to deserialize entities from: " + f + ": " + e.toString());
-		} finally {
-			IOUtils.closeQuietly(is);
-			IOUtils.closeQuietly(buffer);
+			LOGGER.warn("unable to reload sorted IDs from: " + f + ": " + e.toString());
+		}
+		if (bag != null) {
+			verifySerializedEntities(f, sortColumn, sortSpec);
+		}
+		return bag;
+	}
 
-			try {
-				if (input != null) {
-					input.close();
+	/**
+	 * Checks in the background the checksum of a reloaded list of IDs. Reading the
+	 * whole file is not done when reloading it, so that opening a sorted column does
+	 * not depend on the number of rows. A corrupted file is deleted: next sort operation
+	 * on that column will recompute it.
+	 */
+	private void verifySerializedEntities(final File f, final int sortColumn, final String sortSpec) {
+		final String dataId = getDataIdentifier(sortSpec);
+		final int size = getSize();
+		Thread t = new Thread(new Runnable() {
+			public void run() {
+				if (!SortIndexFile.verify(f, sortColumn, dataId, size)) {
+					LOGGER.warn("corrupted sorted IDs file: " + f + ": removed");
+					if (!f.delete()) {
+						f.deleteOnExit();
+					}
 				}
-			} catch (Exception e) {
 			}
-		}
-		return bag;
+		}, "SortIndexFile checker");
+		t.setDaemon(true);
+		t.start();
 	}
 
 	/**
-	 * Creates a new Entity given the associated item data block.
+	 * Creates a new column storage suitable for the type of values to sort.
 	 */
-	protected Entity getEntity(T item, ENTITY_TYPE eType, int id, int sortColumn) {
-		Entity entity;
+	protected ColumnKeys createColumnKeys(ENTITY_TYPE eType, int size) {
 		if (eType == ENTITY_TYPE.tDouble) {
-			entity = new DoubleEntity(id, getDoubleValue(item, sortColumn));
+			return ColumnKeys.forDoubles(size);
 		} else if (eType == ENTITY_TYPE.tInteger) {
-			entity = new IntegerEntity(id, getIntegerValue(item, sortColumn));
+			return ColumnKeys.forIntegers(size);
 		} else {
-			entity = new StringEntity(id, getStringValue(item, sortColumn));
+			return ColumnKeys.forStrings(size);
 		}
+	}
 
-		return entity;
+	/**
+	 * Stores within a column the value of the associated item data block.
+	 */
+	protected void setKey(ColumnKeys keys, T item, ENTITY_TYPE eType, int id, int sortColumn) {
+		if (eType == ENTITY_TYPE.tDouble) {
+			keys.setDouble(id, getDoubleValue(item, sortColumn));
+		} else if (eType == ENTITY_TYPE.tInteger) {
+			keys.setInteger(id, getIntegerValue(item, sortColumn));
+		} else {
+			keys.setString(id, getStringValue(item, sortColumn));
+		}
 	}
 
 	/**
@@ -179,7 +209,7 @@ public abstract class JKTableModelSorter<T> {
 	 * @param sortColumn
 	 *        id of the column that targets the value to retrieve. 
 	 */
-	private String getStringValue(T item, int sortColumn) {
+	protected String getStringValue(T item, int sortColumn) {
 		if (item != null) {
 			Object value = getValue(item, sortColumn);
 			if (value != null) {
@@ -198,14 +228,16 @@ public abstract class JKTableModelSorter<T> {
 	 * @param sortColumn
 	 *        id of the column that targets the value to retrieve. 
 	 */
-	private int getIntegerValue(T item, int sortColumn) {
+	protected int getIntegerValue(T item, int sortColumn) {
 		Object value;
 		int iValue = 0;
 		if (item != null) {
 			value = getValue(item, sortColumn);
-			if (value != null) {
+			if (value instanceof Number) {
+				iValue = ((Number) value).intValue();
+			} else if (value != null) {
 				try {
-					iValue = Integer.valueOf(value.toString());
+					iValue = Integer.parseInt(value.toString().trim());
 				} catch (NumberFormatException ex) {
 					iValue = -1;
 				}
@@ -226,26 +258,17 @@ public abstract class JKTableModelSorter<T> {
 	 * @param sortColumn
 	 *        id of the column that targets the value to retrieve. 
 	 */
-	private double getDoubleValue(T item, int sortColumn) {
+	protected double getDoubleValue(T item, int sortColumn) {
 		Object value;
 		double dValue = 0d;
-		String str, str2;
 
 		if (item != null) {
 			value = getValue(item, sortColumn);
-			if (value != null) {
+			if (value instanceof Number) {
+				dValue = ((Number) value).doubleValue();
+			} else if (value != null) {
 				try {
-					str = value.toString();
-					//double value (see BFileSummary class) uses decimal formatter and current Locale
-					//when dealing with French-based Locale, decimal separator is a comma: so replace it
-					//this solution was chosen instead of using parse() methods from BFileSummary class
-					//formatter. Indeed, that class uses several formatters, and here it is quite difficult
-					//to figure out which one to use.
-					str2 = CoreUtil.replaceFirst(str, ",", ".");// if "," not found, then method returns null
-					if (str2 != null)
-						dValue = Double.valueOf(str2);
-					else
-						dValue = Double.valueOf(str);
+					dValue = parseDecimal(value.toString());
 				} catch (NumberFormatException ex) {
 					dValue = -1d;
 				}
@@ -257,8 +280,48 @@ public abstract class JKTableModelSorter<T> {
 		return dValue;
 	}
 
+	/**
+	 * Converts a formatted decimal value to a double.
+	 * 
+	 * Double value (see BFileSummary class) uses decimal formatter and current Locale:
+	 * when dealing with French-based Locale, decimal separator is a comma, so it is
+	 * handled here. An ending % is also discarded. This solution was chosen instead of
+	 * using parse() methods from BFileSummary class formatter. Indeed, that class uses
+	 * several formatters, and here it is quite difficult to figure out which one to use.
+	 * 
+	 * @param str the value to convert
+	 * 
+	 * @return a double value
+	 * 
+	 * @throws NumberFormatException if str is not a number
+	 */
+	protected static double parseDecimal(String str) {
+		char[] buf;
+		int end, comma;
+
+		end = str.length();
+		while (end > 0 && (str.charAt(end - 1) == '%' || str.charAt(end - 1) == ' ')) {
+			end--;
+		}
+		comma = str.indexOf(',');
+		if (comma == -1 && end == str.length()) {
+			return Double.parseDouble(str);
+		}
+		buf = new char[end];
+		str.getChars(0, end, buf, 0);
+		if (comma != -1 && comma < end) {
+			buf[comma] = '.';
+		}
+		return Double.parseDouble(new String(buf));
+	}
+
 	public boolean stillSorted(int column) {
-		return new File(getSerializeFile(column)).exists();
+		return stillSorted(column, true, null, null);
+	}
+
+	public boolean stillSorted(int column, boolean ascending, int[] thenBy, boolean[] thenAscending) {
+		String sortSpec = getSortSpec(ascending, thenBy, thenAscending);
+		return SortIndexFile.isValid(getSerializeFile(column, sortSpec), column, getDataIdentifier(sortSpec), getSize());
 	}
 
 	/**
@@ -272,16 +335,48 @@ public abstract class JKTableModelSorter<T> {
 	 *        figure out whether or not to force sort computing. So, even if the system has saved a sort result, it will
 	 *        recompute it.
 	 * 
-	 * @return a list of sorted Entities
+	 * @return a list of sorted IDs
 	 * */
 	public SerialEntityBag sort(ProgressTinyDialog monitor, int sortColumn, boolean force) {
-		List<Entity> entities;
+		return sort(monitor, sortColumn, true, null, null, force);
+	}
+
+	/**
+	 * Sort data using compound keys. Ties of the main sort column are ordered using the
+	 * secondary columns, and remaining ties keep the natural ordering of data (stable sort).
+	 * 
+	 * @param sortColumn
+	 *        id of the column on which relies the sort operation. This parameter must be one of the RES_XXX constants
+	 *        defined in the ResultTableModel class.
+	 * 
+	 * @param ascending
+	 *        sort direction of the main column. Returned list of IDs is always in ascending order and it is intended
+	 *        to be read from its end when this parameter is false.
+	 * 
+	 * @param thenBy
+	 *        ids of the secondary columns. Can be null.
+	 * 
+	 * @param thenAscending
+	 *        sort direction of each secondary column. Can be null.
+	 * 
+	 * @param force
+	 *        figure out whether or not to force sort computing. So, even if the system has saved a sort result, it will
+	 *        recompute it.
+	 * 
+	 * @return a list of sorted IDs
+	 * */
+	public SerialEntityBag sort(ProgressTinyDialog monitor, int sortColumn, boolean ascending, int[] thenBy,
+			boolean[] thenAscending, boolean force) {
+		ColumnKeys keys;
 		SerialEntityBag bag = null;
-		ENTITY_TYPE eType = this.getEntityType(sortColumn);
+		String sortSpec;
+		int[] ids;
+		int i;
 
-		//check for an existing serialized list of Entites
+		sortSpec = getSortSpec(ascending, thenBy, thenAscending);
+		//check for an existing serialized list of IDs
 		if (!force) {
-			bag = deSerializeEntities(monitor, sortColumn);
+			bag = deSerializeEntities(monitor, sortColumn, sortSpec);
 			if (bag != null) {
 				if (monitor != null) {
 					monitor.dispose();
@@ -290,19 +385,36 @@ public abstract class JKTableModelSorter<T> {
 			}
 		}
 
-		entities = this.getEntities(monitor, sortColumn);
-		if (entities != null) {
+		keys = this.getColumnKeys(monitor, sortColumn);
+		if (keys != null && sortSpec == null) {
 			//Sort data, always in ascending order
-			if (eType.equals(ENTITY_TYPE.tInteger)) {
-				Collections.sort(entities, new IntegerEntityComparator(true));
-			} else if (eType.equals(ENTITY_TYPE.tDouble)) {
-				Collections.sort(entities, new DoubleEntityComparator(true));
-			} else {
-				Collections.sort(entities, new StringEntityComparator(true));
+			if (monitor != null) {
+				monitor.setMessage("Sorting data...");
 			}
+			ids = ColumnKeys.sortIndex(keys.getKeys());
 
 			//since the above steps may be quite time consuming for huge job, we save the results
-			bag = serializeEntities(entities, sortColumn, this.canSave());
+			bag = serializeEntities(ids, sortColumn, sortSpec, this.canSave());
+		} else if (keys != null) {
+			int[][] ranks = new int[thenBy.length + 1][];
+			boolean[] directions = new boolean[thenBy.length + 1];
+			ranks[0] = keys.getRanks();
+			directions[0] = true;
+			for (i = 0; i < thenBy.length; i++) {
+				keys = this.getColumnKeys(monitor, thenBy[i]);
+				if (keys == null) {
+					return null;
+				}
+				ranks[i + 1] = keys.getRanks();
+				//list is read from its end when main column is descending: secondary directions
+				//are computed accordingly, so that they stay the ones requested by the user
+				directions[i + 1] = (thenAscending[i] == ascending);
+			}
+			if (monitor != null) {
+				monitor.setMessage("Sorting data...");
+			}
+			ids = ColumnKeys.sortIndex(ColumnKeys.combine(ranks, directions), !ascending);
+			bag = serializeEntities(ids, sortColumn, sortSpec, this.canSave());
 		}
 		if (monitor != null) {
 			monitor.dispose();
@@ -310,56 +422,4 @@ public abstract class JKTableModelSorter<T> {
 		return bag;
 	}
 
-	public class IntegerEntityComparator implements Comparator<Entity> {
-		private boolean	ascending;
-
-		public IntegerEntityComparator(boolean ascending) {
-			this.ascending = ascending;
-		}
-
-		@Override
-		public int compare(Entity arg0, Entity arg1) {
-			if (((IntegerEntity) arg0).getValue() > ((IntegerEntity) arg1).getValue()) {
-				return (ascending ? +1 : -1);
-			} else if (((IntegerEntity) arg0).getValue() < ((IntegerEntity) arg1).getValue()) {
-				return (ascending ? -1 : +1);
-			} else {
-				return 0;
-			}
-		}
-	}
-
-	public class DoubleEntityComparator implements Comparator<Entity> {
-		private boolean	ascending;
-
-		public DoubleEntityComparator(boolean ascending) {
-			this.ascending = ascending;
-		}
-
-		@Override
-		public int compare(Entity arg0, Entity arg1) {
-			if (((DoubleEntity) arg0).getValue() > ((DoubleEntity) arg1).getValue()) {
-				return (ascending ? +1 : -1);
-			} else if (((DoubleEntity) arg0).getValue() < ((DoubleEntity) arg1).getValue()) {
-				return (ascending ? -1 : +1);
-			} else {
-				return 0;
-			}
-		}
-	}
-
-	public class StringEntityComparator implements Comparator<Entity> {
-		private boolean	ascending;
-
-		public StringEntityComparator(boolean ascending) {
-			this.ascending = ascending;
-		}
-
-		@Override
-		public int compare(Entity arg0, Entity arg1) {
-			int value = ((StringEntity) arg0).getValue().compareTo(((StringEntity) arg1).getValue());
-			return (ascending ? value : -value);
-		}
-	}
-
 }